@@ -1,11 +1,13 @@
 package com.apa.clipfarmer;
 
 import com.apa.clipfarmer.service.ClipFarmerService;
+import com.apa.clipfarmer.utils.StartupTimingUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 
 /**
  * Spring Boot Application to autoconfigure the Java application.
@@ -18,22 +20,27 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 @Slf4j
 public class ClipFarmerApplication implements CommandLineRunner {
 
+    private static final int STARTUP_STEPS_CAPACITY = 2048;
+
     private final ClipFarmerService clipFarmerService;
 
     /**
      * The main entry point for the Spring Boot application.
      *
-     * @param args command-line arguments passed to the application
+     * @param args command-line arguments passed to the application, e.g. streamerName=xqc,lacy or streamerName=all daemon=true
      */
     public static void main(String[] args) {
+        StartupTimingUtils.markOnce("main");
         String[] hardcodedArgs = {"streamerName=jasontheween"};
-        SpringApplication.run(ClipFarmerApplication.class, hardcodedArgs); //TODO change for args
+        SpringApplication application = new SpringApplication(ClipFarmerApplication.class);
+        application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS_CAPACITY));
+        application.run(args.length > 0 ? args : hardcodedArgs);
     }
 
     /**
      * Runs the ClipFarmer batch process upon application startup.
      *
-     * @param args command-line arguments (streamer name) passed to the application
+     * @param args command-line arguments (streamer names) passed to the application
      */
     @Override
     public void run(String... args) {
@@ -0,0 +1,73 @@
+package com.apa.clipfarmer.config;
+
+import com.apa.clipfarmer.logic.twitch.TwitchRateLimitInterceptor;
+import com.apa.clipfarmer.logic.twitch.TwitchReplayInterceptor;
+import com.apa.clipfarmer.utils.HttpUtils;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Configuration of the shared HTTP client used for all Twitch traffic.
+ * Connections are pooled and kept alive per host, so TLS handshakes are paid once instead of per request.
+ * Responses compressed with gzip or deflate are decompressed transparently by the client.
+ * Every request of the RestTemplate goes through the Twitch rate limiter, and is recorded or replayed when enabled.
+ *
+ * @author alexpages
+ */
+@Configuration
+public class HttpClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient httpClient(
+            @Value("${clipfarmer.http.max-connections:50}") int maxConnections,
+            @Value("${clipfarmer.http.max-connections-per-host:10}") int maxConnectionsPerHost,
+            @Value("${clipfarmer.http.connect-timeout-ms:5000}") long connectTimeoutMillis,
+            @Value("${clipfarmer.http.socket-timeout-ms:30000}") long socketTimeoutMillis,
+            @Value("${clipfarmer.http.idle-timeout-ms:30000}") long idleTimeoutMillis) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerHost)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMillis))
+                        .setSocketTimeout(Timeout.ofMilliseconds(socketTimeoutMillis))
+                        .build())
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectTimeoutMillis))
+                        .setResponseTimeout(Timeout.ofMilliseconds(socketTimeoutMillis))
+                        .build())
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleTimeoutMillis))
+                .evictExpiredConnections()
+                .build();
+    }
+
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient httpClient, TwitchRateLimitInterceptor twitchRateLimitInterceptor,
+                                     TwitchReplayInterceptor twitchReplayInterceptor) {
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        restTemplate.getInterceptors().add(twitchRateLimitInterceptor);
+        if (twitchReplayInterceptor.isEnabled()) {
+            // Last in the chain, so replayed responses still go through the rate limiter
+            restTemplate.getInterceptors().add(twitchReplayInterceptor);
+        }
+        restTemplate.getMessageConverters().stream()
+                .filter(MappingJackson2HttpMessageConverter.class::isInstance)
+                .forEach(converter -> ((MappingJackson2HttpMessageConverter) converter).setObjectMapper(HttpUtils.OBJECT_MAPPER));
+        return restTemplate;
+    }
+}
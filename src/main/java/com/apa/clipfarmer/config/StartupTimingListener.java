@@ -0,0 +1,50 @@
+package com.apa.clipfarmer.config;
+
+import com.apa.clipfarmer.utils.StartupTimingUtils;
+import java.util.Comparator;
+import java.util.stream.StreamSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logs the startup timings once the context is refreshed, before the batch process starts.
+ * Includes the slowest startup steps when the application runs with a {@link BufferingApplicationStartup}.
+ *
+ * @author alexpages
+ */
+@Component
+@Slf4j
+public class StartupTimingListener implements ApplicationListener<ApplicationStartedEvent> {
+
+    private static final int SLOWEST_STEPS = 10;
+
+    @Override
+    public void onApplicationEvent(ApplicationStartedEvent event) {
+        StartupTimingUtils.markOnce("context started");
+        log.info("Spring context started in {} ms", event.getTimeTaken().toMillis());
+
+        ApplicationStartup applicationStartup = event.getSpringApplication().getApplicationStartup();
+        if (applicationStartup instanceof BufferingApplicationStartup bufferingApplicationStartup) {
+            bufferingApplicationStartup.drainBufferedTimeline().getEvents().stream()
+                    .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+                    .limit(SLOWEST_STEPS)
+                    .forEach(timelineEvent -> log.info("Startup step {} {} took {} ms",
+                            timelineEvent.getStartupStep().getName(),
+                            describeTags(timelineEvent.getStartupStep()),
+                            timelineEvent.getDuration().toMillis()));
+        }
+    }
+
+    private static String describeTags(StartupStep startupStep) {
+        return StreamSupport.stream(startupStep.getTags().spliterator(), false)
+                .map(tag -> tag.getKey() + "=" + tag.getValue())
+                .toList()
+                .toString();
+    }
+}
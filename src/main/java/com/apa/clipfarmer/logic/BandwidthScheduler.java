@@ -0,0 +1,184 @@
+package com.apa.clipfarmer.logic;
+
+import com.apa.clipfarmer.model.BandwidthPriorityEnum;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Shares a global bandwidth budget between every download and upload of the application.
+ * The budget is a token bucket refilled at the configured rate. When transfers wait for it, the one with the highest
+ * priority goes first, and transfers of the same priority are served fairly across their owners by granting the
+ * owner that has transferred the fewest bytes, so a large backfill never starves the upload of a finished highlight.
+ *
+ * @author alexpages
+ */
+@Service
+@Slf4j
+public class BandwidthScheduler {
+
+    private static final double BYTES_PER_MEGABIT = 125_000;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final List<Waiter> waiters = new ArrayList<>();
+    private final Map<String, Long> servedBytes = new HashMap<>();
+    private final double bytesPerSecond;
+    private double tokens;
+    private long lastRefillNanos;
+    private long nextSequence;
+
+    /**
+     * Creates the bucket, full with a second of transfer.
+     *
+     * @param maxMbps Bandwidth shared by all transfers, 0 disables the budget.
+     */
+    public BandwidthScheduler(@Value("${clipfarmer.bandwidth.max-mbps:0}") double maxMbps) {
+        bytesPerSecond = Math.max(0, maxMbps) * BYTES_PER_MEGABIT;
+        tokens = bytesPerSecond;
+        lastRefillNanos = System.nanoTime();
+        if (bytesPerSecond > 0) {
+            log.info("Bandwidth budget of {} Mbps shared by all transfers", maxMbps);
+        }
+    }
+
+    /**
+     * Waits until the budget allows a transfer of the given number of bytes.
+     * A grant may leave the bucket in debt, which delays the following grants instead of splitting large transfers.
+     *
+     * @param owner    The owner of the transfer, usually the streamer being processed.
+     * @param priority The priority of the transfer.
+     * @param bytes    The number of bytes to transfer.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(String owner, BandwidthPriorityEnum priority, long bytes) throws InterruptedException {
+        if (bytesPerSecond <= 0 || bytes <= 0) {
+            return;
+        }
+        lock.lock();
+        Waiter waiter = new Waiter(owner, priority, nextSequence++);
+        try {
+            // An owner that was idle does not get to spend the share it did not use
+            long virtualBytes = waiters.stream().mapToLong(this::getServedBytes).min().orElse(0);
+            servedBytes.merge(owner, virtualBytes, Math::max);
+            waiters.add(waiter);
+            while (true) {
+                refill();
+                boolean next = getNextWaiter() == waiter;
+                if (next && tokens > 0) {
+                    break;
+                }
+                if (next) {
+                    changed.awaitNanos((long) (-tokens / bytesPerSecond * TimeUnit.SECONDS.toNanos(1)) + 1);
+                } else {
+                    changed.await();
+                }
+            }
+            tokens -= bytes;
+            servedBytes.merge(owner, bytes, Long::sum);
+        } finally {
+            waiters.remove(waiter);
+            changed.signalAll();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of transfers waiting for the budget.
+     *
+     * @return the number of waiting transfers
+     */
+    int getWaitingCount() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wraps a stream so that every read is charged to the budget.
+     *
+     * @param inputStream The stream to throttle.
+     * @param owner       The owner of the transfer, usually the streamer being processed.
+     * @param priority    The priority of the transfer.
+     * @return The throttled stream
+     */
+    public InputStream throttle(InputStream inputStream, String owner, BandwidthPriorityEnum priority) {
+        return new ThrottledInputStream(inputStream, owner, priority);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        tokens = Math.min(bytesPerSecond, tokens + elapsedSeconds * bytesPerSecond);
+        lastRefillNanos = now;
+    }
+
+    private Waiter getNextWaiter() {
+        return waiters.stream()
+                .min(Comparator.comparing(Waiter::priority)
+                        .thenComparingLong(this::getServedBytes)
+                        .thenComparingLong(Waiter::sequence))
+                .orElse(null);
+    }
+
+    private long getServedBytes(Waiter waiter) {
+        return servedBytes.getOrDefault(waiter.owner(), 0L);
+    }
+
+    private record Waiter(String owner, BandwidthPriorityEnum priority, long sequence) {
+    }
+
+    private final class ThrottledInputStream extends FilterInputStream {
+
+        private final String owner;
+        private final BandwidthPriorityEnum priority;
+
+        private ThrottledInputStream(InputStream inputStream, String owner, BandwidthPriorityEnum priority) {
+            super(inputStream);
+            this.owner = owner;
+            this.priority = priority;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                charge(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int bytesRead = super.read(buffer, offset, length);
+            if (bytesRead > 0) {
+                charge(bytesRead);
+            }
+            return bytesRead;
+        }
+
+        private void charge(long bytes) throws IOException {
+            try {
+                acquire(owner, priority, bytes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the bandwidth budget");
+            }
+        }
+    }
+}
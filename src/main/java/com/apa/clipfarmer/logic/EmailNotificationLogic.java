@@ -4,16 +4,19 @@ import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
 /**
  * Service that notifies a user through email notification.
+ * Created on first use, so the mail setup stays out of startup.
  *
  * @author alexpages
  */
 @Service
+@Lazy
 @RequiredArgsConstructor
 @Slf4j
 public class EmailNotificationLogic {
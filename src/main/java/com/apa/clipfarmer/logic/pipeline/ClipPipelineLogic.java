@@ -0,0 +1,386 @@
+package com.apa.clipfarmer.logic.pipeline;
+
+import com.apa.clipfarmer.logic.twitch.TwitchClipDownloader;
+import com.apa.clipfarmer.logic.twitch.TwitchClipFetcherLogic;
+import com.apa.clipfarmer.logic.twitch.TwitchClipStore;
+import com.apa.clipfarmer.logic.twitch.TwitchClipWatermarkLogic;
+import com.apa.clipfarmer.logic.video.EncodeBudget;
+import com.apa.clipfarmer.logic.video.VideoLogic;
+import com.apa.clipfarmer.mapper.TwitchClipMapper;
+import com.apa.clipfarmer.model.ClipFetchResult;
+import com.apa.clipfarmer.model.ClipJournalStageEnum;
+import com.apa.clipfarmer.model.Mp4Metadata;
+import com.apa.clipfarmer.model.TwitchClip;
+import com.apa.clipfarmer.model.TwitchStreamerNameEnum;
+import com.apa.clipfarmer.model.VideoModeEnum;
+import com.apa.clipfarmer.utils.Mp4Utils;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+/**
+ * Streams the clips of a streamer through the fetch, resolve, download, encode and concat stages.
+ * Each clip is encoded as soon as its download lands, while the next clips are still being resolved and downloaded.
+ * In single pass mode the encode and concat stages are replaced by one compilation of all the downloaded clips.
+ *
+ * @author alexpages
+ */
+@Service
+@Slf4j
+public class ClipPipelineLogic {
+
+    private static final int CLIP_DURATION = 10;
+    private static final int MIN_VIEWS = 400;
+    private static final int DAYS_AGO = 5;
+    private static final int MAX_CLIPS = 40;
+
+    private final TwitchClipFetcherLogic twitchClipFetcherLogic;
+    private final TwitchClipDownloader twitchClipDownloader;
+    private final SqlSessionFactory sqlSessionFactory;
+    private final VideoLogic videoLogic;
+    private final RunJournalLogic runJournalLogic;
+    private final TwitchClipStore twitchClipStore;
+    private final TwitchClipWatermarkLogic twitchClipWatermarkLogic;
+    private final EncodeBudget encodeBudget;
+
+    /**
+     * Maximum number of clips resolved and downloaded at the same time, across all streamers.
+     */
+    private final int downloadConcurrency;
+
+    /**
+     * Capacity of the queue in front of every stage.
+     */
+    private final int queueCapacity;
+
+    /**
+     * Maximum number of clips resolved together in a single GraphQL request.
+     */
+    private final int resolveBatchSize;
+
+    /**
+     * How the highlight video is built from the downloaded clips.
+     */
+    private final VideoModeEnum videoMode;
+
+    private final Semaphore downloadPermits;
+    private final Semaphore encodePermits;
+
+    /**
+     * Creates the pipeline and the worker budgets shared by the pipelines of all streamers.
+     */
+    public ClipPipelineLogic(TwitchClipFetcherLogic twitchClipFetcherLogic,
+                             TwitchClipDownloader twitchClipDownloader,
+                             SqlSessionFactory sqlSessionFactory,
+                             @Lazy VideoLogic videoLogic,
+                             RunJournalLogic runJournalLogic,
+                             TwitchClipStore twitchClipStore,
+                             TwitchClipWatermarkLogic twitchClipWatermarkLogic,
+                             EncodeBudget encodeBudget,
+                             @Value("${clipfarmer.download.concurrency:4}") int downloadConcurrency,
+                             @Value("${clipfarmer.pipeline.queue-capacity:4}") int queueCapacity,
+                             @Value("${clipfarmer.gql.batch-size:10}") int resolveBatchSize,
+                             @Value("${clipfarmer.video.mode:SEGMENTED}") VideoModeEnum videoMode) {
+        this.twitchClipFetcherLogic = twitchClipFetcherLogic;
+        this.twitchClipDownloader = twitchClipDownloader;
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.videoLogic = videoLogic;
+        this.runJournalLogic = runJournalLogic;
+        this.twitchClipStore = twitchClipStore;
+        this.twitchClipWatermarkLogic = twitchClipWatermarkLogic;
+        this.encodeBudget = encodeBudget;
+        this.downloadConcurrency = downloadConcurrency;
+        this.queueCapacity = queueCapacity;
+        this.resolveBatchSize = resolveBatchSize;
+        this.videoMode = videoMode;
+        this.downloadPermits = new Semaphore(Math.max(1, downloadConcurrency));
+        this.encodePermits = new Semaphore(encodeBudget.getConcurrency());
+    }
+
+    /**
+     * Runs the clip pipeline for a streamer and concatenates the processed clips.
+     * If a previous run of the streamer was interrupted, its journaled clips are resumed instead of fetching new ones,
+     * skipping every stage that was already completed. A resume that produces no clip discards the journal and
+     * fetches new clips instead.
+     * If the previous run was uploaded but not committed, its commit is retried first, and the new run waits for it
+     * to succeed, so the clips of the uploaded video are never fetched and uploaded again.
+     *
+     * @param twitchStreamer The streamer to process.
+     * @param outputFileName Name of the merged output file.
+     * @return The path to the merged video, or null if no clip could be processed.
+     */
+    public String run(TwitchStreamerNameEnum twitchStreamer, String outputFileName) {
+        long startTime = System.currentTimeMillis();
+
+        Optional<RunJournal> oUploadedJournal = runJournalLogic.load(twitchStreamer.getName())
+                .filter(uploadedJournal -> ClipJournalStageEnum.UPLOADED.equals(uploadedJournal.getStage()));
+        if (oUploadedJournal.isPresent()) {
+            log.info("Run of {} already uploaded, retrying its commit", twitchStreamer.getName());
+            if (!commitUploaded(oUploadedJournal.get())) {
+                return null;
+            }
+            runJournalLogic.delete(twitchStreamer.getName());
+        }
+
+        RunJournal journal = runJournalLogic.loadOrStart(twitchStreamer.getName());
+        if (ClipJournalStageEnum.CONCATENATED.equals(journal.getStage()) && new File(journal.getMergedVideoPath()).isFile()) {
+            log.info("Merged video of {} already created, resuming from {}", twitchStreamer.getName(), journal.getMergedVideoPath());
+            return journal.getMergedVideoPath();
+        }
+        List<ClipWorkItem> journaledItems = journal.getClips().values().stream()
+                .sorted(Comparator.comparingInt(ClipWorkItem::getIndex))
+                .toList();
+
+        StagedPipeline<ClipWorkItem> pipeline = new StagedPipeline<ClipWorkItem>(twitchStreamer.getName(), queueCapacity)
+                .batchStage("resolve", downloadConcurrency, resolveBatchSize, items -> withPermit(downloadPermits, () -> resolve(items, twitchStreamer, journal)))
+                .stage("download", downloadConcurrency, item -> withPermit(downloadPermits, () -> download(item, twitchStreamer, journal)));
+        if (VideoModeEnum.SEGMENTED.equals(videoMode)) {
+            pipeline.stage("encode", encodeBudget.getConcurrency(), item -> withPermit(encodePermits, () -> encode(item, outputFileName, journal)));
+        }
+        List<ClipWorkItem> processedItems = pipeline
+                .run(emitter -> {
+                    if (!journaledItems.isEmpty()) {
+                        journaledItems.forEach(emitter);
+                        return;
+                    }
+                    ClipFetchResult fetchResult = twitchClipFetcherLogic.getTwitchClips(
+                            twitchStreamer.getName(), CLIP_DURATION, MIN_VIEWS, DAYS_AGO, MAX_CLIPS);
+                    List<TwitchClip> twitchClips = fetchResult.getTwitchClips();
+                    log.info("Total amount of clips retrieved for broadcasterId [{}] is: [{}]",
+                            twitchStreamer.getName(), twitchClips.size());
+                    List<ClipWorkItem> fetchedItems = new ArrayList<>();
+                    for (int i = 0; i < twitchClips.size(); i++) {
+                        fetchedItems.add(new ClipWorkItem(i, twitchClips.get(i)));
+                    }
+                    // Journal every fetched clip first, a resumed run would otherwise lose the clips not resolved yet
+                    runJournalLogic.recordFetched(journal, fetchResult, fetchedItems);
+                    fetchedItems.forEach(emitter);
+                });
+
+        List<ClipWorkItem> orderedItems = processedItems.stream()
+                .sorted(Comparator.comparingInt(ClipWorkItem::getIndex))
+                .toList();
+        log.info("Clip pipeline for {} processed {} clips in {} seconds",
+                twitchStreamer.getName(), orderedItems.size(), (System.currentTimeMillis() - startTime) / 1000);
+        if (orderedItems.isEmpty() && !journaledItems.isEmpty()) {
+            log.warn("No journaled clip of {} could be resumed, starting a new run", twitchStreamer.getName());
+            runJournalLogic.delete(twitchStreamer.getName());
+            return run(twitchStreamer, outputFileName);
+        }
+
+        String mergedVideoPath = VideoModeEnum.SINGLE_PASS.equals(videoMode)
+                ? videoLogic.compileClips(
+                        orderedItems.stream().map(ClipWorkItem::getDownloadedPath).toList(),
+                        orderedItems.stream().map(ClipWorkItem::getDuration).toList(),
+                        orderedItems.stream().map(ClipWorkItem::getMetadata).toList(),
+                        outputFileName)
+                : videoLogic.concatenateProcessedClips(
+                        orderedItems.stream().map(ClipWorkItem::getProcessedPath).toList(), outputFileName);
+        if (mergedVideoPath != null) {
+            runJournalLogic.recordConcatenated(journal, mergedVideoPath,
+                    orderedItems.stream().map(item -> item.getTwitchClip().getClipId()).toList());
+        }
+        return mergedVideoPath;
+    }
+
+    /**
+     * Records that the merged video of a streamer has been uploaded, then commits the run: the clips of the video
+     * are stored in the database, so later runs skip them, and the clip watermark moves past the fetched window.
+     * The upload is journaled first, so a commit that fails is retried by the next run without uploading again.
+     *
+     * @param twitchStreamer The streamer whose video has been uploaded.
+     * @return true if the run is committed and its journal can be deleted
+     */
+    public boolean recordUploaded(TwitchStreamerNameEnum twitchStreamer) {
+        Optional<RunJournal> oJournal = runJournalLogic.recordUploaded(twitchStreamer.getName());
+        if (oJournal.isEmpty()) {
+            log.warn("No run journal found for {}, no clip recorded as uploaded", twitchStreamer.getName());
+            return true;
+        }
+        return commitUploaded(oJournal.get());
+    }
+
+    /**
+     * Stores the clips of an uploaded run and advances the clip watermark. Both steps can be retried:
+     * clips already stored are skipped, and the watermark is set to the end of the window.
+     *
+     * @param journal The journal of the uploaded run.
+     * @return true if the run is committed, false if the commit must be retried
+     */
+    private boolean commitUploaded(RunJournal journal) {
+        try {
+            List<String> mergedClipIds = journal.getMergedClipIds();
+            if (!mergedClipIds.isEmpty()) {
+                try (SqlSession session = sqlSessionFactory.openSession()) {
+                    TwitchClipMapper mapper = session.getMapper(TwitchClipMapper.class);
+                    Set<String> storedClipIds = mapper.selectClipsByClipIds(mergedClipIds).stream()
+                            .map(TwitchClip::getClipId)
+                            .collect(Collectors.toSet());
+                    for (String clipId : mergedClipIds) {
+                        ClipWorkItem item = journal.getClips().get(clipId);
+                        if (item != null && !storedClipIds.contains(clipId)) {
+                            mapper.insertClip(item.getTwitchClip());
+                            log.info("Inserted new clip {} into the database.", clipId);
+                        }
+                    }
+                    session.commit();
+                }
+            }
+            if (journal.getFetchWindow() != null) {
+                twitchClipWatermarkLogic.advance(journal.getBroadcasterId(), journal.getFetchWindow());
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("Unable to commit the uploaded run of {}, the next run retries it: {}",
+                    journal.getStreamerName(), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Skips clips already stored in the database and resolves the video URLs of the others in a single batch.
+     * The database only holds the clips of uploaded highlights, so a clip of a failed run is never skipped.
+     * Journaled clips that were resolved are never skipped, and clips whose download is still on disk are passed through.
+     * The fetch already drops the stored clips and refreshes their view counts, but a journaled clip may have been
+     * uploaded since it was fetched. Clips kept in the clip store are pinned and passed through with their stored file,
+     * without resolving a video URL.
+     *
+     * @param items          The clips to resolve.
+     * @param twitchStreamer The streamer the clips belong to.
+     * @param journal        The journal of the run.
+     * @return The resolved items, without the clips that are skipped or cannot be resolved.
+     */
+    private List<ClipWorkItem> resolve(List<ClipWorkItem> items, TwitchStreamerNameEnum twitchStreamer, RunJournal journal) {
+        List<ClipWorkItem> resolvedItems = new ArrayList<>();
+        List<ClipWorkItem> pendingItems = new ArrayList<>();
+        try (SqlSession session = sqlSessionFactory.openSession()) {
+            TwitchClipMapper mapper = session.getMapper(TwitchClipMapper.class);
+            for (ClipWorkItem item : items) {
+                if (item.hasReached(ClipJournalStageEnum.DOWNLOADED) && new File(item.getDownloadedPath()).isFile()) {
+                    resolvedItems.add(item);
+                    continue;
+                }
+                TwitchClip twitchClip = item.getTwitchClip();
+                TwitchClip storedClip = item.hasReached(ClipJournalStageEnum.RESOLVED)
+                        ? null : mapper.selectClipByClipId(twitchClip.getClipId());
+                if (storedClip == null) {
+                    Optional<Path> oStoredPath = twitchClipStore.pin(twitchStreamer.getName(), twitchClip.getClipId());
+                    if (oStoredPath.isPresent()) {
+                        log.info("Clip {} found in the clip store, skipping download.", twitchClip.getClipId());
+                        item.setDownloadedPath(oStoredPath.get().toString());
+                        resolvedItems.add(item);
+                    } else {
+                        pendingItems.add(item);
+                    }
+                    continue;
+                }
+                log.info("Clip {} already exists in DB, skipping.", twitchClip.getClipId());
+            }
+        }
+        if (pendingItems.isEmpty()) {
+            return resolvedItems;
+        }
+
+        Map<String, String> videoUrls = twitchClipDownloader.resolveVideoUrls(
+                pendingItems.stream().map(ClipWorkItem::getTwitchClip).toList());
+        for (ClipWorkItem item : pendingItems) {
+            String videoUrl = videoUrls.get(item.getTwitchClip().getClipId());
+            if (videoUrl == null) {
+                continue;
+            }
+            item.setVideoUrl(videoUrl);
+            runJournalLogic.recordClip(journal, item, ClipJournalStageEnum.RESOLVED);
+            resolvedItems.add(item);
+        }
+        return resolvedItems;
+    }
+
+    /**
+     * Downloads a resolved clip, unless it was found in the clip store, and checks that it is a complete MP4 file.
+     * The duration of the clip is read from the file, since the one reported by Twitch is rounded.
+     *
+     * @param item           The resolved clip.
+     * @param twitchStreamer The streamer the clip belongs to.
+     * @param journal        The journal of the run.
+     * @return The downloaded item, or null if the download failed.
+     */
+    private ClipWorkItem download(ClipWorkItem item, TwitchStreamerNameEnum twitchStreamer, RunJournal journal) {
+        if (item.hasReached(ClipJournalStageEnum.DOWNLOADED) && new File(item.getDownloadedPath()).isFile()) {
+            log.info("Clip {} already downloaded, skipping download.", item.getTwitchClip().getClipId());
+            return item;
+        }
+        TwitchClip twitchClip = item.getTwitchClip();
+        String downloadedPath = item.getDownloadedPath() != null && new File(item.getDownloadedPath()).isFile()
+                ? item.getDownloadedPath()
+                : twitchClipDownloader.downloadVideo(item.getVideoUrl(), twitchClip, twitchStreamer).orElse(null);
+        if (downloadedPath == null) {
+            return null;
+        }
+        Optional<Mp4Metadata> oMetadata = Mp4Utils.probe(Paths.get(downloadedPath));
+        if (oMetadata.isEmpty() || oMetadata.get().isTruncated()) {
+            log.error("Clip {} is not a complete MP4 file, dropping it.", twitchClip.getClipId());
+            twitchClipStore.remove(twitchClip.getClipId());
+            return null;
+        }
+        item.setDownloadedPath(downloadedPath);
+        item.setMetadata(oMetadata.get());
+        double duration = oMetadata.get().getDurationSeconds();
+        item.setDuration(duration > 0 ? duration : twitchClip.getDuration());
+        runJournalLogic.recordClip(journal, item, ClipJournalStageEnum.DOWNLOADED);
+        return item;
+    }
+
+    /**
+     * Applies the fade transitions to a downloaded clip, unless its processed clip is still on disk.
+     *
+     * @param item           The downloaded clip.
+     * @param outputFileName Name of the merged output file.
+     * @param journal        The journal of the run.
+     * @return The encoded item, or null if encoding failed.
+     */
+    private ClipWorkItem encode(ClipWorkItem item, String outputFileName, RunJournal journal) {
+        if (item.hasReached(ClipJournalStageEnum.ENCODED) && new File(item.getProcessedPath()).isFile()) {
+            log.info("Clip {} already encoded, skipping encode.", item.getTwitchClip().getClipId());
+            return item;
+        }
+        String processedPath = videoLogic.applyTransitions(item.getDownloadedPath(), item.getDuration(), item.getIndex(), outputFileName);
+        if (processedPath == null) {
+            return null;
+        }
+        item.setProcessedPath(processedPath);
+        runJournalLogic.recordClip(journal, item, ClipJournalStageEnum.ENCODED);
+        return item;
+    }
+
+    /**
+     * Runs a stage step once a permit of the shared worker budget is available.
+     *
+     * @param permits The worker budget.
+     * @param step    The step to run.
+     * @return The result of the step.
+     * @throws Exception if the step fails or the thread is interrupted
+     */
+    private static <R> R withPermit(Semaphore permits, Callable<R> step) throws Exception {
+        permits.acquire();
+        try {
+            return step.call();
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.apa.clipfarmer.logic.pipeline;
+
+import com.apa.clipfarmer.model.ClipJournalStageEnum;
+import com.apa.clipfarmer.model.Mp4Metadata;
+import com.apa.clipfarmer.model.TwitchClip;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Class that represents a clip moving through the clip pipeline, with the output of every stage.
+ *
+ * @author alexpages
+ */
+@Data
+@RequiredArgsConstructor
+@NoArgsConstructor(force = true)
+public class ClipWorkItem {
+
+    private final int index;
+    private final TwitchClip twitchClip;
+    private String videoUrl;
+    private String downloadedPath;
+    private double duration; // in seconds
+    private Mp4Metadata metadata; // probed after download
+    private String processedPath;
+    private ClipJournalStageEnum stage; // last completed stage, null for a new clip
+
+    /**
+     * Returns whether the clip has completed the given stage.
+     *
+     * @param journalStage The stage to check
+     * @return true if the clip has completed the given stage or a later one
+     */
+    public boolean hasReached(ClipJournalStageEnum journalStage) {
+        return stage != null && stage.isAtLeast(journalStage);
+    }
+}
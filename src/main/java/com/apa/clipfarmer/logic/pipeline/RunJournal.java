@@ -0,0 +1,28 @@
+package com.apa.clipfarmer.logic.pipeline;
+
+import com.apa.clipfarmer.model.ClipFetchWindow;
+import com.apa.clipfarmer.model.ClipJournalStageEnum;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+
+/**
+ * Class that represents the durable journal of a streamer run, with the last completed stage of every clip.
+ *
+ * @author alexpages
+ */
+@Data
+public class RunJournal {
+
+    private String streamerName;
+    private LocalDateTime startedAt;
+    private ClipJournalStageEnum stage;
+    private String broadcasterId;
+    private ClipFetchWindow fetchWindow; // window the clips were fetched from, committed to the watermark after upload
+    private String mergedVideoPath;
+    private List<String> mergedClipIds = new ArrayList<>(); // clips of the merged video, in order
+    private Map<String, ClipWorkItem> clips = new LinkedHashMap<>();
+}
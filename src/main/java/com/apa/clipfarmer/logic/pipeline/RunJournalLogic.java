@@ -0,0 +1,188 @@
+package com.apa.clipfarmer.logic.pipeline;
+
+import com.apa.clipfarmer.model.ClipFetchResult;
+import com.apa.clipfarmer.model.ClipJournalStageEnum;
+import com.apa.clipfarmer.utils.HttpUtils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps a durable journal per streamer run, so an interrupted run can resume from the last completed stage
+ * of every clip instead of starting over.
+ *
+ * @author alexpages
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RunJournalLogic {
+
+    /**
+     * Directory of the run journals, one file per streamer.
+     */
+    @Value("${clipfarmer.journal.directory:build/journal}")
+    private final String journalDirectory;
+
+    /**
+     * Loads the unfinished journal of a streamer, or starts a new one.
+     * A journal whose run was already uploaded is replaced, its commit must be retried before.
+     *
+     * @param streamerName The name of the streamer.
+     * @return The journal of the run
+     */
+    public RunJournal loadOrStart(String streamerName) {
+        Optional<RunJournal> oJournal = load(streamerName);
+        if (oJournal.isPresent() && !ClipJournalStageEnum.UPLOADED.equals(oJournal.get().getStage())) {
+            RunJournal journal = oJournal.get();
+            log.info("Resuming run of {} started at {} with {} clips", streamerName, journal.getStartedAt(), journal.getClips().size());
+            return journal;
+        }
+
+        RunJournal journal = new RunJournal();
+        journal.setStreamerName(streamerName);
+        journal.setStartedAt(LocalDateTime.now());
+        save(journal);
+        return journal;
+    }
+
+    /**
+     * Records the clips fetched for the run and the window they come from with a single write,
+     * so a resumed run processes all of them.
+     *
+     * @param journal     The journal of the run.
+     * @param fetchResult The result of the fetch.
+     * @param items       The fetched clips.
+     */
+    public void recordFetched(RunJournal journal, ClipFetchResult fetchResult, List<ClipWorkItem> items) {
+        synchronized (journal) {
+            journal.setBroadcasterId(fetchResult.getBroadcasterId());
+            journal.setFetchWindow(fetchResult.getWindow());
+            for (ClipWorkItem item : items) {
+                item.setStage(ClipJournalStageEnum.FETCHED);
+                journal.getClips().put(item.getTwitchClip().getClipId(), item);
+            }
+            save(journal);
+        }
+    }
+
+    /**
+     * Records the stage completed by a clip.
+     *
+     * @param journal The journal of the run.
+     * @param item    The clip.
+     * @param stage   The stage the clip has completed.
+     */
+    public void recordClip(RunJournal journal, ClipWorkItem item, ClipJournalStageEnum stage) {
+        synchronized (journal) {
+            item.setStage(stage);
+            journal.getClips().put(item.getTwitchClip().getClipId(), item);
+            save(journal);
+        }
+    }
+
+    /**
+     * Records the merged video of the run.
+     *
+     * @param journal         The journal of the run.
+     * @param mergedVideoPath The path to the merged video.
+     * @param mergedClipIds   The ids of the clips in the merged video, in order.
+     */
+    public void recordConcatenated(RunJournal journal, String mergedVideoPath, List<String> mergedClipIds) {
+        synchronized (journal) {
+            journal.setStage(ClipJournalStageEnum.CONCATENATED);
+            journal.setMergedVideoPath(mergedVideoPath);
+            journal.setMergedClipIds(new ArrayList<>(mergedClipIds));
+            save(journal);
+        }
+    }
+
+    /**
+     * Records that the merged video of the streamer run has been uploaded.
+     * Written as soon as the upload succeeds and before the run is committed, so a failed commit is retried by the
+     * next run instead of uploading the video again.
+     *
+     * @param streamerName The name of the streamer.
+     * @return The journal of the uploaded run, or empty if there is none
+     */
+    public Optional<RunJournal> recordUploaded(String streamerName) {
+        Optional<RunJournal> oJournal = load(streamerName);
+        oJournal.ifPresent(journal -> {
+            journal.setStage(ClipJournalStageEnum.UPLOADED);
+            save(journal);
+        });
+        return oJournal;
+    }
+
+    /**
+     * Deletes the journal of a streamer once its run is complete.
+     *
+     * @param streamerName The name of the streamer.
+     */
+    public void delete(String streamerName) {
+        try {
+            Files.deleteIfExists(getJournalPath(streamerName));
+        } catch (IOException e) {
+            log.error("Unable to delete run journal of {}: {}", streamerName, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the journal of a streamer from disk.
+     *
+     * @param streamerName The name of the streamer.
+     * @return The journal, or empty if there is none or it cannot be read
+     */
+    public Optional<RunJournal> load(String streamerName) {
+        Path journalPath = getJournalPath(streamerName);
+        if (!Files.isRegularFile(journalPath)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(HttpUtils.OBJECT_MAPPER.readValue(journalPath.toFile(), RunJournal.class));
+        } catch (IOException e) {
+            log.error("Unable to read run journal {}, starting over: {}", journalPath, e.getMessage(), e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes the journal to a temporary file, flushes it to disk and atomically replaces the previous journal,
+     * so a crash never leaves a half-written journal behind.
+     *
+     * @param journal The journal to write.
+     */
+    private void save(RunJournal journal) {
+        Path journalPath = getJournalPath(journal.getStreamerName());
+        Path tempPath = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(journalPath.getParent());
+            byte[] content = HttpUtils.OBJECT_MAPPER.writeValueAsBytes(journal);
+            try (FileChannel channel = FileChannel.open(tempPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(ByteBuffer.wrap(content));
+                channel.force(true);
+            }
+            Files.move(tempPath, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Unable to write run journal {}: {}", journalPath, e.getMessage(), e);
+        }
+    }
+
+    private Path getJournalPath(String streamerName) {
+        return Paths.get(journalDirectory, streamerName + ".json");
+    }
+}
@@ -0,0 +1,295 @@
+package com.apa.clipfarmer.logic.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pipeline engine that runs a chain of stages connected by bounded queues.
+ * Every stage has its own pool of virtual-thread workers, so an item enters a stage as soon as the previous
+ * stage has finished with it. A full queue blocks the upstream stage, which keeps in-flight work bounded.
+ * A stage that fails or returns null for an item drops that item without affecting the others.
+ * Batch stages hand several items at once to their function, waiting briefly for the batch to fill up.
+ *
+ * @param <T> Type of the items flowing through the pipeline
+ * @author alexpages
+ */
+@Slf4j
+public class StagedPipeline<T> {
+
+    private static final long BATCH_LINGER_MILLIS = 50;
+
+    private final String name;
+    private final int queueCapacity;
+    private final List<Stage<T>> stages = new ArrayList<>();
+
+    /**
+     * Creates an empty pipeline.
+     *
+     * @param name          Name of the pipeline, used for logging.
+     * @param queueCapacity Capacity of the queue in front of every stage.
+     */
+    public StagedPipeline(String name, int queueCapacity) {
+        this.name = name;
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Appends a stage to the pipeline.
+     *
+     * @param stageName Name of the stage, used for logging.
+     * @param workers   Number of items processed concurrently by this stage.
+     * @param function  Function applied to every item; returning null drops the item.
+     * @return This pipeline
+     */
+    public StagedPipeline<T> stage(String stageName, int workers, StageFunction<T> function) {
+        return batchStage(stageName, workers, 1, items -> {
+            T result = function.apply(items.get(0));
+            return result == null ? List.of() : List.of(result);
+        });
+    }
+
+    /**
+     * Appends a stage that processes items in batches.
+     * A batch is handed to the function once it is full, or when no new item arrives within a short linger time.
+     *
+     * @param stageName Name of the stage, used for logging.
+     * @param workers   Number of batches processed concurrently by this stage.
+     * @param batchSize Maximum number of items per batch.
+     * @param function  Function applied to every batch; items missing from its result are dropped.
+     * @return This pipeline
+     */
+    public StagedPipeline<T> batchStage(String stageName, int workers, int batchSize, BatchStageFunction<T> function) {
+        stages.add(new Stage<>(stageName, Math.max(1, workers), Math.max(1, batchSize), function));
+        return this;
+    }
+
+    /**
+     * Runs the pipeline until the source is exhausted and every item has left the last stage.
+     *
+     * @param source Source that emits the items into the first stage.
+     * @return The items that made it through every stage, in completion order.
+     */
+    public List<T> run(PipelineSource<T> source) {
+        List<BlockingQueue<Envelope<T>>> queues = new ArrayList<>();
+        for (int i = 0; i <= stages.size(); i++) {
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        List<T> results = Collections.synchronizedList(new ArrayList<>());
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            executor.submit(() -> runSource(source, queues.get(0)));
+            for (int i = 0; i < stages.size(); i++) {
+                Stage<T> stage = stages.get(i);
+                AtomicInteger activeWorkers = new AtomicInteger(stage.workers);
+                for (int w = 0; w < stage.workers; w++) {
+                    BlockingQueue<Envelope<T>> input = queues.get(i);
+                    BlockingQueue<Envelope<T>> output = queues.get(i + 1);
+                    executor.submit(() -> runWorker(stage, input, output, activeWorkers));
+                }
+            }
+            executor.submit(() -> drain(queues.get(stages.size()), results));
+        }
+        return results;
+    }
+
+    /**
+     * Emits all source items into the first queue, followed by the end-of-stream marker.
+     */
+    private void runSource(PipelineSource<T> source, BlockingQueue<Envelope<T>> output) {
+        try {
+            source.emit(item -> put(output, new Envelope<>(item)));
+        } catch (Exception e) {
+            log.error("[{}] Source failed: {}", name, e.getMessage(), e);
+        } finally {
+            put(output, Envelope.endOfStream());
+        }
+    }
+
+    /**
+     * Applies a stage to batches of items until the end-of-stream marker is received.
+     * The marker is handed back for the sibling workers, and the last worker to finish forwards it downstream.
+     */
+    private void runWorker(Stage<T> stage, BlockingQueue<Envelope<T>> input, BlockingQueue<Envelope<T>> output,
+                           AtomicInteger activeWorkers) {
+        try {
+            boolean endOfStream = false;
+            while (!endOfStream) {
+                List<T> batch = new ArrayList<>(stage.batchSize);
+                endOfStream = takeBatch(input, batch, stage.batchSize);
+                for (T result : apply(stage, batch)) {
+                    output.put(new Envelope<>(result));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("[{}] Stage {} interrupted", name, stage.name);
+        } finally {
+            if (activeWorkers.decrementAndGet() == 0) {
+                put(output, Envelope.endOfStream());
+            }
+        }
+    }
+
+    /**
+     * Takes the next batch of items, lingering briefly for more items until the batch is full.
+     *
+     * @return true if the end-of-stream marker was reached
+     */
+    private boolean takeBatch(BlockingQueue<Envelope<T>> input, List<T> batch, int batchSize) throws InterruptedException {
+        Envelope<T> envelope = input.take();
+        while (true) {
+            if (envelope.isEndOfStream()) {
+                input.put(envelope);
+                return true;
+            }
+            batch.add(envelope.item);
+            if (batch.size() >= batchSize) {
+                return false;
+            }
+            envelope = input.poll(BATCH_LINGER_MILLIS, TimeUnit.MILLISECONDS);
+            if (envelope == null) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Applies a stage function to a batch of items, isolating its failures.
+     */
+    private List<T> apply(Stage<T> stage, List<T> batch) {
+        if (batch.isEmpty()) {
+            return List.of();
+        }
+        try {
+            List<T> results = stage.function.apply(batch);
+            return results == null ? List.of() : results.stream().filter(Objects::nonNull).toList();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
+        } catch (Exception e) {
+            log.error("[{}] Stage {} failed for items {}: {}", name, stage.name, batch, e.getMessage(), e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Collects the items leaving the last stage.
+     */
+    private void drain(BlockingQueue<Envelope<T>> input, List<T> results) {
+        try {
+            while (true) {
+                Envelope<T> envelope = input.take();
+                if (envelope.isEndOfStream()) {
+                    return;
+                }
+                results.add(envelope.item);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void put(BlockingQueue<Envelope<T>> queue, Envelope<T> envelope) {
+        try {
+            queue.put(envelope);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while feeding pipeline " + name, e);
+        }
+    }
+
+    /**
+     * Function applied by a stage to each item.
+     *
+     * @param <T> Type of the items
+     */
+    @FunctionalInterface
+    public interface StageFunction<T> {
+
+        /**
+         * Processes an item.
+         *
+         * @param item The item to process
+         * @return The processed item, or null to drop it
+         * @throws Exception if the item cannot be processed
+         */
+        T apply(T item) throws Exception;
+    }
+
+    /**
+     * Function applied by a batch stage to each batch of items.
+     *
+     * @param <T> Type of the items
+     */
+    @FunctionalInterface
+    public interface BatchStageFunction<T> {
+
+        /**
+         * Processes a batch of items.
+         *
+         * @param items The items to process
+         * @return The processed items to forward, items left out are dropped
+         * @throws Exception if the batch cannot be processed
+         */
+        List<T> apply(List<T> items) throws Exception;
+    }
+
+    /**
+     * Source that emits the items of the pipeline.
+     *
+     * @param <T> Type of the items
+     */
+    @FunctionalInterface
+    public interface PipelineSource<T> {
+
+        /**
+         * Emits every item through the given emitter. The emitter blocks while the first stage is full.
+         *
+         * @param emitter Consumer that feeds the first stage
+         * @throws Exception if the source fails
+         */
+        void emit(Consumer<T> emitter) throws Exception;
+    }
+
+    private static final class Stage<T> {
+
+        private final String name;
+        private final int workers;
+        private final int batchSize;
+        private final BatchStageFunction<T> function;
+
+        private Stage(String name, int workers, int batchSize, BatchStageFunction<T> function) {
+            this.name = name;
+            this.workers = workers;
+            this.batchSize = batchSize;
+            this.function = function;
+        }
+    }
+
+    private static final class Envelope<T> {
+
+        private final T item;
+
+        private Envelope(T item) {
+            this.item = item;
+        }
+
+        private static <T> Envelope<T> endOfStream() {
+            return new Envelope<>(null);
+        }
+
+        private boolean isEndOfStream() {
+            return item == null;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Concurrency limiter for endpoints that do not report their budget, such as the Twitch GraphQL API.
+ * The limit grows by one request per round of successful requests and is halved whenever a request is throttled
+ * (additive increase, multiplicative decrease), so it settles around the highest concurrency the server tolerates.
+ *
+ * @author alexpages
+ */
+@Slf4j
+public class AimdConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private double limit;
+    private int inFlight;
+
+    /**
+     * Creates a limiter.
+     *
+     * @param initialLimit Number of concurrent requests allowed at start.
+     * @param minLimit     Lowest number of concurrent requests.
+     * @param maxLimit     Highest number of concurrent requests.
+     */
+    public AimdConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Waits until a request may be sent.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                released.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a request and adjusts the limit to its outcome.
+     *
+     * @param throttled Whether the server throttled the request.
+     */
+    public void release(boolean throttled) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (throttled) {
+                limit = Math.max(minLimit, limit / 2);
+                log.info("GraphQL request throttled, concurrency limit lowered to {}", (int) limit);
+            } else {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.logic.BandwidthScheduler;
+import com.apa.clipfarmer.model.BandwidthPriorityEnum;
+import com.apa.clipfarmer.utils.DirectBufferPool;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Downloads clip files over the shared HTTP client into a .part file that is renamed once complete.
+ * A transient failure is retried with backoff and resumes with a Range request from the bytes already on disk,
+ * and the final size is checked against the length announced by the server, so a truncated file never reaches ffmpeg.
+ * Bytes are written through a file channel from large pooled direct buffers, so a clip costs few large writes.
+ * A fresh download starts with a ranged request for its first segment, and when the Content-Range of the response shows
+ * a large file, the rest is split in segments downloaded in parallel, each written in place into a file preallocated
+ * to the announced length, so a download is not capped by the speed of a single connection.
+ * Every buffer written is charged to the shared bandwidth budget of its streamer.
+ *
+ * @author alexpages
+ */
+@Slf4j
+@Service
+public class ClipFileDownloader {
+
+    static final String PART_SUFFIX = ".part";
+    static final String ALLOCATED_SUFFIX = ".alloc";
+
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes\\s+(?:(\\d+)-\\d+|\\*)/(\\d+|\\*)");
+
+    private final CloseableHttpClient httpClient;
+    private final BandwidthScheduler bandwidthScheduler;
+    private final int maxAttempts;
+    private final boolean preallocate;
+    private final int maxSegments;
+    private final int minSegmentKb;
+    private final DirectBufferPool bufferPool;
+
+    /**
+     * Creates the downloader and its pool of write buffers, with one idle buffer kept per segment of every
+     * concurrent download.
+     *
+     * @param httpClient          The shared HTTP client.
+     * @param bandwidthScheduler  The shared bandwidth budget.
+     * @param maxAttempts         Attempts made for a download before giving up.
+     * @param bufferKb            Size of the buffers used to write downloads to disk.
+     * @param preallocate         Whether a download is written into a file preallocated to its announced length.
+     * @param maxSegments         Maximum number of segments a file is split in, 1 disables segmented downloads.
+     * @param minSegmentKb        Minimum size of a segment, files smaller than two segments are downloaded with a
+     *                            single request.
+     * @param downloadConcurrency Number of clips downloaded at the same time.
+     */
+    public ClipFileDownloader(CloseableHttpClient httpClient, BandwidthScheduler bandwidthScheduler,
+                              @Value("${clipfarmer.download.max-attempts:5}") int maxAttempts,
+                              @Value("${clipfarmer.download.buffer-kb:1024}") int bufferKb,
+                              @Value("${clipfarmer.download.preallocate:false}") boolean preallocate,
+                              @Value("${clipfarmer.download.max-segments:4}") int maxSegments,
+                              @Value("${clipfarmer.download.min-segment-kb:4096}") int minSegmentKb,
+                              @Value("${clipfarmer.download.concurrency:4}") int downloadConcurrency) {
+        this.httpClient = httpClient;
+        this.bandwidthScheduler = bandwidthScheduler;
+        this.maxAttempts = maxAttempts;
+        this.preallocate = preallocate;
+        this.maxSegments = maxSegments;
+        this.minSegmentKb = minSegmentKb;
+        this.bufferPool = new DirectBufferPool(bufferKb * 1024, downloadConcurrency * Math.max(1, maxSegments));
+    }
+
+    /**
+     * Downloads a file, resuming after transient failures.
+     * A fresh download of a large file is first attempted in parallel segments, falling back to single requests.
+     *
+     * @param url        The URL of the file.
+     * @param outputPath The path of the downloaded file.
+     * @param owner      The owner charged for the bandwidth, usually the streamer being processed.
+     * @return true if the file was downloaded completely
+     */
+    public boolean download(String url, Path outputPath, String owner) {
+        Path partPath = outputPath.resolveSibling(outputPath.getFileName() + PART_SUFFIX);
+        AtomicLong transferredBytes = new AtomicLong();
+        long startTime = System.nanoTime();
+        if (maxSegments > 1 && !Files.exists(partPath)) {
+            if (downloadSegmented(url, outputPath, owner, transferredBytes)) {
+                logThroughput(outputPath, transferredBytes.get(), System.nanoTime() - startTime);
+                return true;
+            }
+            // The throughput reported for the fallback only covers the single requests
+            transferredBytes.set(0);
+            startTime = System.nanoTime();
+        }
+        long backoffMillis = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 1; attempt <= Math.max(1, maxAttempts); attempt++) {
+            try {
+                Files.createDirectories(outputPath.getParent());
+                long totalLength = downloadRemaining(url, partPath, owner, transferredBytes);
+                long downloadedLength = Files.size(partPath);
+                if (totalLength >= 0 && downloadedLength != totalLength) {
+                    throw new IOException("Incomplete download, " + downloadedLength + " of " + totalLength + " bytes");
+                }
+                Files.move(partPath, outputPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logThroughput(outputPath, transferredBytes.get(), System.nanoTime() - startTime);
+                return true;
+            } catch (DownloadRejectedException e) {
+                log.error("Error downloading video {}: {}", outputPath, e.getMessage());
+                deletePart(partPath);
+                return false;
+            } catch (IOException e) {
+                log.warn("Download attempt {}/{} of {} failed: {}", attempt, maxAttempts, outputPath, e.getMessage());
+            }
+            if (attempt < maxAttempts && !sleep(backoffMillis)) {
+                return false;
+            }
+            backoffMillis *= 2;
+        }
+        log.error("Error downloading video {} after {} attempts", outputPath, maxAttempts);
+        return false;
+    }
+
+    /**
+     * Downloads a fresh file starting with a ranged request for its first segment. The Content-Range of the response
+     * tells the length of the file: the rest of a large file is downloaded in parallel segments written in place into
+     * a file preallocated to that length, while a small file, or a server that ignores ranges, is written to the .part
+     * file from the same response.
+     *
+     * @param url              The URL of the file.
+     * @param outputPath       The path of the downloaded file.
+     * @param owner            The owner charged for the bandwidth.
+     * @param transferredBytes Counter of the bytes written to disk.
+     * @return true if the file was downloaded completely, false if the rest must be downloaded with single requests
+     */
+    private boolean downloadSegmented(String url, Path outputPath, String owner, AtomicLong transferredBytes) {
+        Path partPath = outputPath.resolveSibling(outputPath.getFileName() + PART_SUFFIX);
+        Path allocatedPath = outputPath.resolveSibling(outputPath.getFileName() + ALLOCATED_SUFFIX);
+        long firstLength = Math.max(1, minSegmentKb) * 1024L;
+        HttpGet request = createRequest(new HttpGet(url));
+        request.setHeader(HttpHeaders.RANGE, "bytes=0-" + (firstLength - 1));
+        try {
+            Files.createDirectories(outputPath.getParent());
+            return httpClient.execute(request, response -> {
+                int code = response.getCode();
+                long totalLength;
+                if (code == HttpStatus.SC_PARTIAL_CONTENT && parseRangeStart(response) == 0) {
+                    totalLength = parseTotalLength(response);
+                    if (totalLength > firstLength) {
+                        downloadSegments(response.getEntity().getContent(), url, allocatedPath, totalLength, firstLength,
+                                owner, transferredBytes);
+                        Files.move(allocatedPath, outputPath, StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE);
+                        return true;
+                    }
+                } else if (code == HttpStatus.SC_OK) {
+                    totalLength = response.getEntity().getContentLength();
+                } else {
+                    EntityUtils.consume(response.getEntity());
+                    return false;
+                }
+
+                // The response holds the whole file, unless a ranged response did not announce its length
+                writePart(response.getEntity().getContent(), partPath, totalLength, owner, transferredBytes);
+                boolean complete = totalLength >= 0 ? Files.size(partPath) == totalLength : code == HttpStatus.SC_OK;
+                if (complete) {
+                    Files.move(partPath, outputPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                return complete;
+            });
+        } catch (IOException e) {
+            log.warn("Segmented download of {} failed, downloading with single requests: {}", outputPath, e.getMessage());
+            deletePart(allocatedPath);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the first segment of a file from its response while the other segments are downloaded in parallel,
+     * all of them in place into a file preallocated to the length of the file.
+     *
+     * @param firstSegment     The body of the response to the first segment.
+     * @param url              The URL of the file.
+     * @param allocatedPath    The path of the preallocated file.
+     * @param totalLength      The length of the file.
+     * @param firstLength      The length of the first segment.
+     * @param owner            The owner charged for the bandwidth.
+     * @param transferredBytes Counter of the bytes written to disk.
+     * @throws IOException if a segment cannot be downloaded
+     */
+    private void downloadSegments(InputStream firstSegment, String url, Path allocatedPath, long totalLength,
+                                  long firstLength, String owner, AtomicLong transferredBytes) throws IOException {
+        long remainingLength = totalLength - firstLength;
+        int segmentCount = (int) Math.max(1, Math.min(maxSegments - 1, remainingLength / firstLength));
+        long segmentLength = (remainingLength + segmentCount - 1) / segmentCount;
+        log.info("Downloading {} in {} segments of {} KB", allocatedPath, segmentCount + 1, segmentLength / 1024);
+
+        try (FileChannel channel = FileChannel.open(allocatedPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            channel.write(ByteBuffer.allocate(1), totalLength - 1);
+            List<Future<Void>> segments = new ArrayList<>();
+            for (long start = firstLength; start < totalLength; start += segmentLength) {
+                long segmentStart = start;
+                long segmentEnd = Math.min(start + segmentLength, totalLength) - 1;
+                segments.add(executor.submit(() -> downloadSegment(url, channel, segmentStart, segmentEnd, owner, transferredBytes)));
+            }
+            try {
+                AtomicLong progress = new AtomicLong();
+                try (firstSegment) {
+                    transfer(firstSegment, channel, 0, owner, progress);
+                } finally {
+                    transferredBytes.addAndGet(progress.get());
+                }
+                if (progress.get() != firstLength) {
+                    throw new IOException("Incomplete segment, " + progress.get() + " of " + firstLength + " bytes");
+                }
+                for (Future<Void> segment : segments) {
+                    segment.get();
+                }
+            } catch (ExecutionException e) {
+                executor.shutdownNow();
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while downloading segments");
+            } catch (IOException e) {
+                executor.shutdownNow();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Downloads a segment of a file into its position in the file channel, resuming the segment after transient failures.
+     *
+     * @param url              The URL of the file.
+     * @param channel          The channel of the preallocated file.
+     * @param start            The position of the first byte of the segment.
+     * @param end              The position of the last byte of the segment.
+     * @param owner            The owner charged for the bandwidth.
+     * @param transferredBytes Counter of the bytes written to disk.
+     * @return Nothing
+     * @throws IOException          if the segment cannot be downloaded
+     * @throws InterruptedException if the thread is interrupted while backing off
+     */
+    private Void downloadSegment(String url, FileChannel channel, long start, long end, String owner,
+                                 AtomicLong transferredBytes)
+            throws IOException, InterruptedException {
+        long segmentLength = end - start + 1;
+        AtomicLong progress = new AtomicLong();
+        long backoffMillis = INITIAL_BACKOFF_MILLIS;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                long from = start + progress.get();
+                HttpGet request = createRequest(new HttpGet(url));
+                request.setHeader(HttpHeaders.RANGE, "bytes=" + from + "-" + end);
+                try {
+                    httpClient.execute(request, response -> {
+                        if (response.getCode() != HttpStatus.SC_PARTIAL_CONTENT || parseRangeStart(response) != from) {
+                            EntityUtils.consume(response.getEntity());
+                            throw new IOException("Server returned HTTP " + response.getCode() + " for segment " + from + "-" + end);
+                        }
+                        transfer(response.getEntity().getContent(), channel, from, owner, progress);
+                        return null;
+                    });
+                    if (progress.get() != segmentLength) {
+                        throw new IOException("Incomplete segment, " + progress.get() + " of " + segmentLength + " bytes");
+                    }
+                    return null;
+                } catch (IOException e) {
+                    if (attempt >= maxAttempts) {
+                        throw e;
+                    }
+                    log.debug("Segment {}-{} attempt {}/{} failed: {}", start, end, attempt, maxAttempts, e.getMessage());
+                }
+                Thread.sleep(backoffMillis);
+                backoffMillis *= 2;
+            }
+        } finally {
+            transferredBytes.addAndGet(progress.get());
+        }
+    }
+
+    /**
+     * Downloads the bytes missing from the .part file, resuming with a Range request when part of it is already on disk.
+     *
+     * @param url              The URL of the file.
+     * @param partPath         The path of the .part file.
+     * @param owner            The owner charged for the bandwidth.
+     * @param transferredBytes Counter of the bytes written to disk.
+     * @return The total length of the file announced by the server, or -1 if unknown
+     * @throws IOException if the download fails
+     */
+    private long downloadRemaining(String url, Path partPath, String owner, AtomicLong transferredBytes) throws IOException {
+        // A preallocated file left behind by a crash does not tell how much of it was written
+        Path allocatedPath = partPath.resolveSibling(partPath.getFileName().toString()
+                .replace(PART_SUFFIX, ALLOCATED_SUFFIX));
+        Files.deleteIfExists(allocatedPath);
+        long offset = Files.exists(partPath) ? Files.size(partPath) : 0;
+        HttpGet request = createRequest(new HttpGet(url));
+        if (offset > 0) {
+            request.setHeader(HttpHeaders.RANGE, "bytes=" + offset + "-");
+            log.info("Resuming download of {} from byte {}", partPath, offset);
+        }
+
+        return httpClient.execute(request, response -> {
+            int code = response.getCode();
+            if (code == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+                EntityUtils.consume(response.getEntity());
+                long totalLength = parseTotalLength(response);
+                if (totalLength == offset) {
+                    return totalLength;
+                }
+                Files.deleteIfExists(partPath);
+                throw new IOException("Partial download does not match the file anymore, restarting");
+            }
+
+            boolean append;
+            long totalLength;
+            if (code == HttpStatus.SC_PARTIAL_CONTENT && offset > 0) {
+                if (parseRangeStart(response) != offset) {
+                    EntityUtils.consume(response.getEntity());
+                    Files.deleteIfExists(partPath);
+                    throw new IOException("Server returned an unexpected range, restarting");
+                }
+                append = true;
+                totalLength = parseTotalLength(response);
+            } else if (code == HttpStatus.SC_OK) {
+                append = false;
+                totalLength = response.getEntity().getContentLength();
+            } else {
+                EntityUtils.consume(response.getEntity());
+                if (code == HttpStatus.SC_REQUEST_TIMEOUT || code == HttpStatus.SC_TOO_MANY_REQUESTS
+                        || code >= HttpStatus.SC_SERVER_ERROR) {
+                    throw new IOException("HTTP " + code);
+                }
+                throw new DownloadRejectedException("HTTP " + code);
+            }
+
+            if (!append) {
+                writePart(response.getEntity().getContent(), partPath, totalLength, owner, transferredBytes);
+                return totalLength;
+            }
+            try (InputStream inputStream = response.getEntity().getContent();
+                 FileChannel channel = FileChannel.open(partPath, StandardOpenOption.WRITE)) {
+                transfer(inputStream, channel, channel.size(), owner, transferredBytes);
+            }
+            return totalLength;
+        });
+    }
+
+    /**
+     * Writes a response from the first byte of the file into the .part file, preallocated to the total length if enabled.
+     */
+    private void writePart(InputStream inputStream, Path partPath, long totalLength, String owner,
+                           AtomicLong transferredBytes) throws IOException {
+        if (preallocate && totalLength > 0) {
+            Path allocatedPath = partPath.resolveSibling(partPath.getFileName().toString()
+                    .replace(PART_SUFFIX, ALLOCATED_SUFFIX));
+            writePreallocated(inputStream, allocatedPath, partPath, totalLength, owner, transferredBytes);
+            return;
+        }
+        try (inputStream;
+             FileChannel channel = FileChannel.open(partPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            transfer(inputStream, channel, 0, owner, transferredBytes);
+        }
+    }
+
+    /**
+     * Writes a download into a file preallocated to its total length. The file is trimmed to the bytes actually
+     * written and moved to the .part file even if the transfer fails, so a later attempt can resume from it.
+     */
+    private void writePreallocated(InputStream inputStream, Path allocatedPath, Path partPath, long totalLength,
+                                   String owner, AtomicLong transferredBytes) throws IOException {
+        try (inputStream;
+             FileChannel channel = FileChannel.open(allocatedPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.allocate(1), totalLength - 1);
+            AtomicLong progress = new AtomicLong();
+            try {
+                transfer(inputStream, channel, 0, owner, progress);
+            } finally {
+                transferredBytes.addAndGet(progress.get());
+                channel.truncate(progress.get());
+            }
+        } finally {
+            if (Files.exists(allocatedPath)) {
+                Files.move(allocatedPath, partPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+
+    /**
+     * Copies a response body into a file channel from the given position, filling a pooled direct buffer before
+     * every write, and waits for the bandwidth budget before writing every buffer.
+     *
+     * @param inputStream The response body.
+     * @param channel     The file channel.
+     * @param position    The position of the first byte in the file.
+     * @param owner       The owner charged for the bandwidth.
+     * @param progress    Counter of the bytes written, updated after every write.
+     * @throws IOException if reading or writing fails
+     */
+    private void transfer(InputStream inputStream, FileChannel channel, long position, String owner, AtomicLong progress)
+            throws IOException {
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            ReadableByteChannel source = Channels.newChannel(inputStream);
+            long filePosition = position;
+            boolean endOfStream = false;
+            while (!endOfStream) {
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer) == -1) {
+                        endOfStream = true;
+                        break;
+                    }
+                }
+                buffer.flip();
+                acquireBandwidth(owner, buffer.remaining());
+                while (buffer.hasRemaining()) {
+                    int bytesWritten = channel.write(buffer, filePosition);
+                    filePosition += bytesWritten;
+                    progress.addAndGet(bytesWritten);
+                }
+                buffer.clear();
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private void acquireBandwidth(String owner, int bytes) throws InterruptedIOException {
+        try {
+            bandwidthScheduler.acquire(owner, BandwidthPriorityEnum.DOWNLOAD, bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the bandwidth budget");
+        }
+    }
+
+    /**
+     * Sets the headers shared by every download request.
+     */
+    private static <R extends HttpUriRequestBase> R createRequest(R request) {
+        request.setHeader(HttpHeaders.USER_AGENT, "Mozilla/5.0");
+        // Byte offsets only hold for the stored representation, never let the server compress the file
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+        return request;
+    }
+
+    private static void logThroughput(Path outputPath, long bytes, long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 1) / 1_000_000_000.0;
+        double megabytes = bytes / (1024.0 * 1024.0);
+        log.info("Download completed: {} ({} MB in {} s, {} MB/s)", outputPath,
+                String.format("%.1f", megabytes), String.format("%.2f", seconds), String.format("%.1f", megabytes / seconds));
+    }
+
+    private static long parseRangeStart(ClassicHttpResponse response) {
+        Matcher matcher = matchContentRange(response);
+        return matcher != null && matcher.group(1) != null ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    private static long parseTotalLength(ClassicHttpResponse response) {
+        Matcher matcher = matchContentRange(response);
+        return matcher != null && !"*".equals(matcher.group(2)) ? Long.parseLong(matcher.group(2)) : -1;
+    }
+
+    private static Matcher matchContentRange(ClassicHttpResponse response) {
+        Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+        if (contentRange == null) {
+            return null;
+        }
+        Matcher matcher = CONTENT_RANGE_PATTERN.matcher(contentRange.getValue().trim());
+        return matcher.matches() ? matcher : null;
+    }
+
+    private static void deletePart(Path partPath) {
+        try {
+            Files.deleteIfExists(partPath);
+        } catch (IOException e) {
+            log.warn("Unable to delete partial download {}: {}", partPath, e.getMessage());
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Failure that retrying cannot fix, such as an expired signed URL.
+     */
+    private static final class DownloadRejectedException extends IOException {
+
+        private DownloadRejectedException(String message) {
+            super(message);
+        }
+    }
+}
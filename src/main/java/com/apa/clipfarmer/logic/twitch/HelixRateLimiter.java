@@ -0,0 +1,124 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Token bucket for the Twitch Helix API, refilled from the budget reported by the server.
+ * Every Helix response carries the size of the bucket, the points left and the moment it is refilled, so the
+ * bucket follows the server instead of guessing its rate.
+ *
+ * @author alexpages
+ */
+@Slf4j
+public class HelixRateLimiter {
+
+    static final String LIMIT_HEADER = "Ratelimit-Limit";
+    static final String REMAINING_HEADER = "Ratelimit-Remaining";
+    static final String RESET_HEADER = "Ratelimit-Reset";
+
+    private static final long DEFAULT_WINDOW_MILLIS = 60_000;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition refilled = lock.newCondition();
+    private int limit;
+    private int remaining;
+    private long resetAtMillis;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param initialLimit Points per window assumed until the server reports its own budget.
+     */
+    public HelixRateLimiter(int initialLimit) {
+        this.limit = Math.max(1, initialLimit);
+        this.remaining = this.limit;
+        this.resetAtMillis = System.currentTimeMillis() + DEFAULT_WINDOW_MILLIS;
+    }
+
+    /**
+     * Takes a point from the bucket, waiting for the bucket to be refilled when it is empty.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                if (now >= resetAtMillis) {
+                    remaining = limit;
+                    resetAtMillis = now + DEFAULT_WINDOW_MILLIS;
+                }
+                if (remaining > 0) {
+                    remaining--;
+                    return;
+                }
+                log.debug("Helix rate limit exhausted, waiting {} ms for the bucket to refill", resetAtMillis - now);
+                refilled.await(resetAtMillis - now, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Aligns the bucket with the budget reported in the headers of a Helix response.
+     *
+     * @param headers The response headers.
+     */
+    public void update(HttpHeaders headers) {
+        Integer reportedLimit = parseHeader(headers, LIMIT_HEADER);
+        Integer reportedRemaining = parseHeader(headers, REMAINING_HEADER);
+        Integer reportedReset = parseHeader(headers, RESET_HEADER);
+        if (reportedRemaining == null || reportedReset == null) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (reportedLimit != null) {
+                limit = Math.max(1, reportedLimit);
+            }
+            remaining = reportedRemaining;
+            resetAtMillis = TimeUnit.SECONDS.toMillis(reportedReset);
+            refilled.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Empties the bucket after the server rejected a request, until the reported reset.
+     *
+     * @param headers The headers of the rejected response.
+     */
+    public void onThrottled(HttpHeaders headers) {
+        update(headers);
+        lock.lock();
+        try {
+            remaining = 0;
+            if (resetAtMillis <= System.currentTimeMillis()) {
+                resetAtMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Integer parseHeader(HttpHeaders headers, String name) {
+        String value = headers.getFirst(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid {} header: {}", name, value);
+            return null;
+        }
+    }
+}
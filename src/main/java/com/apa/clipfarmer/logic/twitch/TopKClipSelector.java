@@ -0,0 +1,84 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.model.TwitchClip;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Keeps the K most viewed clips seen so far in a bounded min-heap, so memory stays O(K) however many clips are offered.
+ * Thread-safe and de-duplicated by clip ID, so overlapping pages can be offered concurrently.
+ *
+ * @author alexpages
+ */
+public class TopKClipSelector {
+
+    private static final Comparator<TwitchClip> BY_VIEW_COUNT = Comparator.comparingInt(TwitchClip::getViewCount);
+
+    private final int capacity;
+    private final PriorityQueue<TwitchClip> heap;
+    private final Set<String> clipIds = new HashSet<>();
+
+    /**
+     * Creates a selector for the given amount of clips.
+     *
+     * @param capacity Maximum amount of clips kept.
+     */
+    public TopKClipSelector(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.heap = new PriorityQueue<>(this.capacity, BY_VIEW_COUNT);
+    }
+
+    /**
+     * Offers a clip, evicting the least viewed clip if the selector is full and the new clip has more views.
+     *
+     * @param clip The clip to offer.
+     * @return true if the clip was kept, false if it was not or it is already selected
+     */
+    public synchronized boolean offer(TwitchClip clip) {
+        if (clipIds.contains(clip.getClipId())) {
+            return false;
+        }
+        if (heap.size() < capacity) {
+            add(clip);
+            return true;
+        }
+        if (clip.getViewCount() > heap.peek().getViewCount()) {
+            clipIds.remove(heap.poll().getClipId());
+            add(clip);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a clip with the given view count would still be kept.
+     * Clips are returned by Helix in descending view count, so once this is false for the last clip of a page,
+     * no later page can enter the selection.
+     *
+     * @param viewCount The view count to check.
+     * @return true if a clip with this view count would be kept
+     */
+    public synchronized boolean canAccept(int viewCount) {
+        return heap.size() < capacity || viewCount > heap.peek().getViewCount();
+    }
+
+    private void add(TwitchClip clip) {
+        heap.add(clip);
+        clipIds.add(clip.getClipId());
+    }
+
+    /**
+     * Returns the selected clips sorted by view count (desc).
+     *
+     * @return The selected clips
+     */
+    public synchronized List<TwitchClip> toSortedList() {
+        List<TwitchClip> clips = new ArrayList<>(heap);
+        clips.sort(BY_VIEW_COUNT.reversed());
+        return clips;
+    }
+}
@@ -1,39 +1,115 @@
 package com.apa.clipfarmer.logic.twitch;
 
 import com.apa.clipfarmer.model.TwitchConstants;
+import com.apa.clipfarmer.model.TwitchOAuthToken;
 import com.apa.clipfarmer.utils.HttpUtils;
+import com.apa.clipfarmer.utils.StartupTimingUtils;
 import com.fasterxml.jackson.databind.JsonNode;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Optional;
-import lombok.experimental.UtilityClass;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 /**
  * Class that gathers all Twitch logic: authentication, data fetching, etc.
+ * The app access token is cached until shortly before it expires, and concurrent refreshes collapse into one request.
  *
  * @author alexpages
  */
 @Slf4j
-@UtilityClass
+@Service
+@RequiredArgsConstructor
 public class TwitchAuthLogic {
 
     private static final String GRANT_TYPE = "client_credentials";
+    private static final long DEFAULT_EXPIRES_IN_SECONDS = 3600; // used when the response has no expires_in
+
+    private final RestTemplate restTemplate;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile TwitchOAuthToken cachedToken;
 
     /**
-     * Fetches the OAuth token from the Twitch API.
+     * Time before expiry at which the token is refreshed.
+     */
+    @Value("${clipfarmer.twitch.token.refresh-margin-seconds:300}")
+    private long refreshMarginSeconds;
+
+    /**
+     * Returns the cached OAuth token, fetching a new one from the Twitch API when it is about to expire.
+     * While the current token is still valid, a single caller refreshes it and the others keep using it.
      *
      * @return OAuth token
      * @throws IllegalStateException if credentials are missing
      * @throws RuntimeException if the API request fails
      */
-    public static String getOAuthToken() {
+    public String getOAuthToken() {
+        TwitchOAuthToken token = cachedToken;
+        if (token != null && !token.expiresWithin(getRefreshMargin())) {
+            return token.getAccessToken();
+        }
+
+        if (token != null && !token.expiresWithin(Duration.ZERO)) {
+            if (!refreshLock.tryLock()) {
+                return token.getAccessToken();
+            }
+            try {
+                return refreshIfNeeded().getAccessToken();
+            } catch (RuntimeException e) {
+                log.warn("Unable to refresh OAuth token ahead of expiry, using the current one: {}", e.getMessage());
+                return token.getAccessToken();
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+
+        refreshLock.lock();
+        try {
+            return refreshIfNeeded().getAccessToken();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Fetches a new token unless another caller refreshed it while this one was waiting for the lock.
+     *
+     * @return The cached token
+     */
+    private TwitchOAuthToken refreshIfNeeded() {
+        TwitchOAuthToken token = cachedToken;
+        if (token == null || token.expiresWithin(getRefreshMargin())) {
+            token = requestOAuthToken();
+            cachedToken = token;
+            log.info("OAuth token refreshed, expires at {}", token.getExpiresAt());
+        }
+        return token;
+    }
+
+    private Duration getRefreshMargin() {
+        return Duration.ofSeconds(refreshMarginSeconds);
+    }
+
+    /**
+     * Fetches the OAuth token from the Twitch API.
+     *
+     * @return OAuth token and its expiry
+     * @throws IllegalStateException if credentials are missing
+     * @throws RuntimeException if the API request fails
+     */
+    private TwitchOAuthToken requestOAuthToken() {
+        StartupTimingUtils.markOnce("first Twitch API call");
         validateTwitchCredentials();
 
         String url = UriComponentsBuilder.fromHttpUrl(TwitchConstants.TWITCH_OAUTH_API)
@@ -46,8 +122,6 @@ public class TwitchAuthLogic {
         headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
         HttpEntity<String> requestEntity = new HttpEntity<>(headers);
 
-        RestTemplate restTemplate = new RestTemplate();
-
         try {
             ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, requestEntity, String.class);
 
@@ -57,12 +131,17 @@ public class TwitchAuthLogic {
             }
 
             JsonNode jsonResponse = HttpUtils.parseJsonResponse(response.getBody());
-            return Optional.ofNullable(jsonResponse.get("access_token"))
+            String accessToken = Optional.ofNullable(jsonResponse.get("access_token"))
                     .map(JsonNode::asText)
                     .orElseThrow(() -> {
                         log.error("Access token not found in Twitch API response.");
                         return new RuntimeException("Invalid response: Access token missing.");
                     });
+            long expiresIn = Optional.ofNullable(jsonResponse.get("expires_in"))
+                    .map(JsonNode::asLong)
+                    .filter(seconds -> seconds > 0)
+                    .orElse(DEFAULT_EXPIRES_IN_SECONDS);
+            return new TwitchOAuthToken(accessToken, Instant.now().plusSeconds(expiresIn));
 
         } catch (RestClientException e) {
             log.error("Error fetching OAuth token: {}", e.getMessage(), e);
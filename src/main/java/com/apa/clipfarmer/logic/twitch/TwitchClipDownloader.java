@@ -2,21 +2,27 @@ package com.apa.clipfarmer.logic.twitch;
 
 import com.apa.clipfarmer.model.TwitchClip;
 import com.apa.clipfarmer.model.TwitchStreamerNameEnum;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileOutputStream;
+import com.apa.clipfarmer.utils.HttpUtils;
+import com.fasterxml.jackson.databind.JsonNode;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
 
 import static com.apa.clipfarmer.model.TwitchConstants.TWITCH_GQL_URL;
 import static com.apa.clipfarmer.model.TwitchConstants.TWITCH_GRAPHQL_CLIENT_ID;
@@ -31,36 +37,83 @@ import static com.apa.clipfarmer.model.TwitchConstants.TWITCH_GRAPHQL_CLIENT_ID;
 @Service
 public class TwitchClipDownloader {
 
-    private static final String OUTPUT_FOLDER = "build/downloads/";
+    private final TwitchAuthLogic twitchAuthLogic;
+    private final RestTemplate restTemplate;
+    private final ClipFileDownloader clipFileDownloader;
+    private final TwitchClipStore twitchClipStore;
 
     /**
-     * Downloads a Twitch clip using the provided URL and OAuth token.
+     * Maximum number of clips resolved in a single GraphQL request.
+     */
+    @Value("${clipfarmer.gql.batch-size:10}")
+    private final int gqlBatchSize;
+
+    /**
+     * Height of the compilation, the smallest rendition at or above it is downloaded.
+     */
+    @Value("${clipfarmer.video.target-height:720}")
+    private final int targetHeight;
+
+    /**
+     * Frame rate of the compilation, the smallest rendition at or above it is downloaded.
+     */
+    @Value("${clipfarmer.video.target-fps:30}")
+    private final double targetFrameRate;
+
+    /**
+     * Resolves the signed video URLs of several Twitch clips, sending up to the configured batch size of
+     * operations in every GraphQL request. A clip that cannot be resolved does not affect the others.
      *
-     * @param clipUrl the URL of the Twitch clip
+     * @param twitchClips the clips to resolve
+     * @return the video URLs of the resolved clips, by clip id
      */
-    public void downloadFile(String clipUrl, TwitchClip twitchClip, TwitchStreamerNameEnum twitchStreamer) {
-        log.info("Starting download for clip: {}", clipUrl);
+    public Map<String, String> resolveVideoUrls(List<TwitchClip> twitchClips) {
+        Map<String, String> slugs = new HashMap<>();
+        for (TwitchClip twitchClip : twitchClips) {
+            String clipSlug = extractClipSlug(twitchClip.getUrl());
+            if (clipSlug.isEmpty()) {
+                log.error("Invalid clip URL: {}", twitchClip.getUrl());
+                continue;
+            }
+            slugs.put(twitchClip.getClipId(), clipSlug);
+        }
+        List<TwitchClip> resolvableClips = twitchClips.stream()
+                .filter(twitchClip -> slugs.containsKey(twitchClip.getClipId()))
+                .toList();
 
-        String clipSlug = extractClipSlug(clipUrl);
-        if (clipSlug.isEmpty()) {
-            log.error("Invalid clip URL: {}", clipUrl);
-            return;
+        Map<String, String> videoUrls = new HashMap<>();
+        int batchSize = Math.max(1, gqlBatchSize);
+        for (int from = 0; from < resolvableClips.size(); from += batchSize) {
+            List<TwitchClip> batch = resolvableClips.subList(from, Math.min(from + batchSize, resolvableClips.size()));
+            videoUrls.putAll(getClipVideoUrls(batch, slugs));
         }
-        log.info("Clip Slug has been extracted successfully: {}", clipSlug);
+        return videoUrls;
+    }
 
-        Optional<String> oVideoUrl = getClipVideoUrl(clipSlug);
-        if (oVideoUrl.isEmpty()) {
-            log.error("Could not retrieve video URL for clip: {}", clipUrl);
-            return;
+    /**
+     * Downloads a resolved clip video into the clip store.
+     * The clip is pinned in the store for the streamer until its run releases it.
+     *
+     * @param videoUrl the signed video URL of the clip
+     * @param twitchClip the clip to download
+     * @param twitchStreamer the streamer the clip belongs to
+     * @return an Optional containing the path of the downloaded file, or empty if the download failed
+     */
+    public Optional<String> downloadVideo(String videoUrl, TwitchClip twitchClip, TwitchStreamerNameEnum twitchStreamer) {
+        if (videoUrl == null) {
+            log.error("Clip {} has no video URL.", twitchClip.getClipId());
+            return Optional.empty();
+        }
+
+        if (!downloadVideo(videoUrl, twitchClipStore.getPath(twitchClip.getClipId()), twitchStreamer)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(twitchClipStore.add(twitchStreamer.getName(), twitchClip.getClipId()).toString());
+        } catch (IOException e) {
+            log.error("Unable to add clip {} to the clip store: {}", twitchClip.getClipId(), e.getMessage(), e);
+            return Optional.empty();
         }
-        log.info("Clip video URL has been extracted successfully: {}", oVideoUrl.get());
-        String folder = OUTPUT_FOLDER + twitchStreamer.getName();
-        String outputFileName = String.format(
-                "%s/%s.mp4",
-                folder,
-                twitchClip.getClipId()
-        );
-        downloadVideo(oVideoUrl.get(), outputFileName, folder);
     }
 
     /**
@@ -75,34 +128,47 @@ public class TwitchClipDownloader {
     }
 
     /**
-     * Retrieves the video URL for the given clip slug.
+     * Retrieves the video URLs of a batch of clips with a single GraphQL request.
+     * The API answers an array of operations with an array of responses in the same order.
      *
-     * @param clipSlug the slug of the clip
-     * @return an Optional containing the video URL if found, or empty if not
+     * @param batch the clips to resolve
+     * @param slugs the slugs of the clips, by clip id
+     * @return the video URLs of the resolved clips, by clip id
      */
-    private Optional<String> getClipVideoUrl(String clipSlug) {
+    private Map<String, String> getClipVideoUrls(List<TwitchClip> batch, Map<String, String> slugs) {
+        Map<String, String> videoUrls = new HashMap<>();
         try {
-            String jsonQuery = createJsonQuery(clipSlug);
-
-            HttpURLConnection conn = createPostConnection();
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(jsonQuery.getBytes(StandardCharsets.UTF_8));
+            byte[] jsonQueries = batch.stream()
+                    .map(twitchClip -> createJsonQuery(slugs.get(twitchClip.getClipId())))
+                    .collect(Collectors.joining(",", "[", "]"))
+                    .getBytes(StandardCharsets.UTF_8);
+            HttpHeaders headers = createPostHeaders();
+            JsonNode responses = restTemplate.execute(TWITCH_GQL_URL, HttpMethod.POST,
+                    request -> {
+                        request.getHeaders().putAll(headers);
+                        request.getBody().write(jsonQueries);
+                    },
+                    response -> HttpUtils.OBJECT_MAPPER.readTree(response.getBody()));
+            if (responses == null || !responses.isArray()) {
+                log.error("Unexpected Twitch API response for {} clips: {}", batch.size(), responses);
+                return videoUrls;
             }
+            log.info("Twitch API Response for {} clips", batch.size());
 
-            int responseCode = conn.getResponseCode();
-            String response = readResponse(conn);
-            log.info("Twitch API Response ({}): {}", responseCode, response);
-
-            if (responseCode != 200) {
-                log.error("Failed to fetch clip: HTTP {}", responseCode);
-                return Optional.empty();
+            for (int i = 0; i < batch.size(); i++) {
+                TwitchClip twitchClip = batch.get(i);
+                Optional<String> oVideoUrl = extractVideoUrl(responses.get(i));
+                if (oVideoUrl.isEmpty()) {
+                    log.error("Could not retrieve video URL for clip: {}", twitchClip.getUrl());
+                    continue;
+                }
+                log.info("Clip video URL has been extracted successfully for clip: {}", twitchClip.getClipId());
+                videoUrls.put(twitchClip.getClipId(), oVideoUrl.get());
             }
-
-            return extractVideoUrl(response);
-        } catch (IOException e) {
-            log.error("Error fetching Twitch clip: {}", e.getMessage(), e);
-            return Optional.empty();
+        } catch (RestClientException e) {
+            log.error("Error fetching batch of {} Twitch clips: {}", batch.size(), e.getMessage(), e);
         }
+        return videoUrls;
     }
 
     /**
@@ -116,7 +182,7 @@ public class TwitchClipDownloader {
         {
             "operationName": "VideoAccessToken_Clip",
             "variables": { "slug": "%s" },
-            "query": "query ($slug: ID!) { clip(slug: $slug) { videoQualities { sourceURL } playbackAccessToken(params: { platform: \\"web\\" }) { signature value } } } }",
+            "query": "query ($slug: ID!) { clip(slug: $slug) { videoQualities { quality frameRate sourceURL } playbackAccessToken(params: { platform: \\"web\\" }) { signature value } } } }",
             "extensions": {
                 "persistedQuery": {
                     "version": 1,
@@ -128,110 +194,93 @@ public class TwitchClipDownloader {
     }
 
     /**
-     * Creates an HTTP POST connection to the Twitch API.
+     * Creates the headers of a POST request to the Twitch GraphQL API.
      *
-     * @return the HttpURLConnection
-     * @throws IOException if an I/O error occurs
+     * @return the request headers
      */
-    private HttpURLConnection createPostConnection() throws IOException {
-        URL url = new URL(TWITCH_GQL_URL);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Client-ID", TWITCH_GRAPHQL_CLIENT_ID);
-        conn.setRequestProperty("Authorization", "Bearer " + TwitchAuthLogic.getOAuthToken());
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setRequestProperty("Accept", "application/json");
-        conn.setDoOutput(true);
-        return conn;
+    private HttpHeaders createPostHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Client-ID", TWITCH_GRAPHQL_CLIENT_ID);
+        headers.set("Authorization", "Bearer " + twitchAuthLogic.getOAuthToken());
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        return headers;
     }
 
     /**
-     * Reads the response from the given HttpURLConnection.
+     * Extracts the video URL from the response of a single operation.
      *
-     * @param conn the HttpURLConnection
-     * @return the response as a string
-     * @throws IOException if an I/O error occurs
+     * @param response the response of the operation, may be null
+     * @return an Optional containing the video URL if found, or empty if not
      */
-    private String readResponse(HttpURLConnection conn) throws IOException {
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-            StringBuilder response = new StringBuilder();
-            String responseLine;
-            while ((responseLine = br.readLine()) != null) {
-                response.append(responseLine.trim());
-            }
-            return response.toString();
+    private Optional<String> extractVideoUrl(JsonNode response) {
+        if (response == null || !response.isObject()) {
+            log.error("Missing response for clip operation.");
+            return Optional.empty();
         }
+        return parseClipData(response);
     }
 
     /**
-     * Extracts the video URL from the API response.
+     * Parses the clip data from the JSON response.
      *
-     * @param response the API response as a string
+     * @param response the JSON response
      * @return an Optional containing the video URL if found, or empty if not
      */
-    private Optional<String> extractVideoUrl(String response) {
-        try {
-            JSONObject jsonResponse = new JSONObject(response);
-            return parseClipData(jsonResponse);
-        } catch (Exception e) {
-            log.error("Error parsing API response: {}", e.getMessage(), e);
+    private Optional<String> parseClipData(JsonNode response) {
+        JsonNode videoAccessTokenData = response.path("data").path("clip");
+        JsonNode playbackAccessToken = videoAccessTokenData.path("playbackAccessToken");
+        String signature = playbackAccessToken.path("signature").asText(null);
+        String token = playbackAccessToken.path("value").asText(null);
+
+        String videoURL = selectVideoQuality(videoAccessTokenData.path("videoQualities"))
+                .map(videoQuality -> videoQuality.path("sourceURL").asText(null))
+                .orElse(null);
+        if (signature == null || token == null || videoURL == null) {
+            log.error("No valid data found in the response: {}", response);
+            return Optional.empty();
         }
-        return Optional.empty();
+        String clipDownloadUrl = String.format("%s?sig=%s&token=%s", videoURL, signature, token);
+        return Optional.of(clipDownloadUrl);
     }
 
     /**
-     * Parses the clip data from the JSON response.
+     * Selects the smallest rendition whose height and frame rate are at or above the targets,
+     * falling back to the largest rendition when none of them reaches the targets.
      *
-     * @param response the JSON response
-     * @return an Optional containing the video URL if found, or empty if not
+     * @param videoQualities the renditions of the clip
+     * @return an Optional containing the selected rendition, or empty if the clip has none
      */
-    private Optional<String> parseClipData(JSONObject response) {
-        try {
-            log.info("Parsing the API response: {}", response.toString());
-
-            if (response.has("data")) {
-                JSONObject videoAccessTokenData = response.getJSONObject("data").getJSONObject("clip");
-                String signature = videoAccessTokenData.getJSONObject("playbackAccessToken").getString("signature");
-                String token = videoAccessTokenData.getJSONObject("playbackAccessToken").getString("value");
-
-                // Get the video URL (assuming you want the first available quality)
-                String videoURL = videoAccessTokenData.getJSONArray("videoQualities").getJSONObject(0).getString("sourceURL");
-                String clipDownloadUrl = String.format("%s?sig=%s&token=%s", videoURL, signature, token);
-                return Optional.of(clipDownloadUrl);
-            } else {
-                log.error("No valid data found in the response.");
-            }
-        } catch (Exception e) {
-            log.error("Error parsing clip data: {}", e.getMessage(), e);
+    private Optional<JsonNode> selectVideoQuality(JsonNode videoQualities) {
+        Comparator<JsonNode> bySize = Comparator
+                .comparingInt((JsonNode videoQuality) -> videoQuality.path("quality").asInt(0))
+                .thenComparingDouble(videoQuality -> videoQuality.path("frameRate").asDouble(0));
+        List<JsonNode> renditions = StreamSupport.stream(videoQualities.spliterator(), false)
+                .filter(videoQuality -> videoQuality.hasNonNull("sourceURL"))
+                .toList();
+
+        Optional<JsonNode> oVideoQuality = renditions.stream()
+                .filter(videoQuality -> videoQuality.path("quality").asInt(0) >= targetHeight)
+                .filter(videoQuality -> videoQuality.path("frameRate").asDouble(0) >= targetFrameRate)
+                .min(bySize);
+        if (oVideoQuality.isEmpty()) {
+            oVideoQuality = renditions.stream().max(bySize);
         }
-        return Optional.empty();
+        oVideoQuality.ifPresent(videoQuality -> log.debug("Selected rendition {}p{} for a target of {}p{}",
+                videoQuality.path("quality").asText(), videoQuality.path("frameRate").asInt(), targetHeight, (int) targetFrameRate));
+        return oVideoQuality;
     }
 
     /**
      * Downloads the video from the given URL to the specified output file.
      *
-     * @param videoUrl      the URL of the video to download
-     * @param outputFileName the name of the output file
+     * @param videoUrl   the URL of the video to download
+     * @param outputPath the path of the output file
+     * @param twitchStreamer the streamer charged for the bandwidth
+     * @return true if the download completed, false otherwise
      */
-    private void downloadVideo(String videoUrl, String outputFileName, String folder) {
-        try {
-            log.info("Downloading video from: {}", videoUrl);
-            new File(folder).mkdirs();
-
-            HttpURLConnection conn = (HttpURLConnection) new URL(videoUrl).openConnection();
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-
-            try (InputStream inputStream = conn.getInputStream();
-                 FileOutputStream outputStream = new FileOutputStream(outputFileName)) {
-                byte[] buffer = new byte[4096];
-                int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
-                }
-            }
-            log.info("Download completed: {}", outputFileName);
-        } catch (IOException e) {
-            log.error("Error downloading video: {}", e.getMessage());
-        }
+    private boolean downloadVideo(String videoUrl, Path outputPath, TwitchStreamerNameEnum twitchStreamer) {
+        log.info("Downloading video from: {}", videoUrl);
+        return clipFileDownloader.download(videoUrl, outputPath, twitchStreamer.getName());
     }
 }
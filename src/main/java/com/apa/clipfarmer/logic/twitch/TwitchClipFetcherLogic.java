@@ -1,27 +1,38 @@
 package com.apa.clipfarmer.logic.twitch;
 
+import com.apa.clipfarmer.mapper.TwitchClipMapper;
+import com.apa.clipfarmer.model.ClipFetchResult;
+import com.apa.clipfarmer.model.ClipFetchWindow;
 import com.apa.clipfarmer.model.TwitchClip;
 import com.apa.clipfarmer.model.TwitchConstants;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.apa.clipfarmer.utils.HttpUtils;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpEntity;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -37,115 +48,318 @@ import org.springframework.web.util.UriComponentsBuilder;
 @Slf4j
 public class TwitchClipFetcherLogic {
 
+    private static final int PAGE_SIZE = 100;
+    private static final Duration MIN_WINDOW = Duration.ofHours(1);
+
     private final TwitchUserLogic twitchUserLogic;
+    private final TwitchClipWatermarkLogic twitchClipWatermarkLogic;
+    private final TwitchAuthLogic twitchAuthLogic;
+    private final RestTemplate restTemplate;
+    private final SqlSessionFactory sqlSessionFactory;
+
+    /**
+     * Maximum number of clip pages fetched at the same time.
+     */
+    @Value("${clipfarmer.fetch.concurrency:4}")
+    private final int fetchConcurrency;
 
     /**
      * Fetches the top clips for the given streamer and sorts them by view count.
+     * The time window is split into sub-windows that are paginated concurrently and merged into a single
+     * de-duplicated top-K selection. A window is only split when it holds more than one page of relevant clips,
+     * so dense periods are split finer while sparse ones are fetched in a single request.
+     * Clips already stored by a previous run are dropped from every page before the selection, so they never take
+     * a slot of a new highlight, and their view counts are refreshed instead.
+     * Only the clips created since the watermark of the broadcaster are fetched, except for periodic full scans.
+     * The watermark is not moved here, the caller advances it once the clips have been used.
+     * Every page request reads the OAuth token from {@link TwitchAuthLogic}, so it is refreshed when it expires.
      *
      * @param streamerName The name of the streamer.
-     * @param oAuthToken   The OAuth token for authentication.
-     * @return A list of sorted TwitchClip objects.
+     * @param clipDuration The minimum duration of a clip, in seconds.
+     * @param minimumViews The minimum amount of views of a clip.
+     * @param daysAgo      The amount of days to look back.
+     * @param maxClips     The maximum amount of clips returned.
+     * @return The sorted clips, with the broadcaster and the window they were fetched from.
      */
-    public List<TwitchClip> getTwitchClips(String streamerName, String oAuthToken, int clipDuration, int minimumViews, int daysAgo) {
-        String broadcasterId = twitchUserLogic.getBroadcasterId(streamerName, oAuthToken);
-        String url = UriComponentsBuilder.fromHttpUrl(TwitchConstants.TWITCH_CLIP_API)
-                .queryParam("broadcaster_id", broadcasterId)
-                .queryParam("started_at", Instant.now().minus(daysAgo, ChronoUnit.DAYS))
-                .queryParam("first", 5)
-                .toUriString();
+    public ClipFetchResult getTwitchClips(String streamerName, int clipDuration, int minimumViews, int daysAgo,
+                                          int maxClips) {
+        String broadcasterId = twitchUserLogic.getBroadcasterId(streamerName);
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.set("Authorization", "Bearer " + oAuthToken);
         headers.set("Client-Id", TwitchConstants.TWITCH_CLIENT_ID);
 
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-        RestTemplate restTemplate = new RestTemplate();
-        List<TwitchClip> allClips = new ArrayList<>();
-        String afterCursor = null;
+        ClipFetchContext context = new ClipFetchContext(broadcasterId, headers, restTemplate,
+                new TopKClipSelector(maxClips), new Semaphore(Math.max(1, fetchConcurrency)), clipDuration, minimumViews);
+        ClipFetchWindow window = twitchClipWatermarkLogic.getFetchWindow(broadcasterId, daysAgo);
+        log.info("Fetching clips of streamer {} from {} to {} (full scan: {})",
+                streamerName, window.getStartedAt(), window.getEndedAt(), window.isFullScan());
 
         try {
-            do {
-                String pageUrl = (afterCursor != null) ? url + "&after=" + afterCursor : url;
-                ResponseEntity<String> response = restTemplate.exchange(pageUrl, HttpMethod.GET, entity, String.class);
-                log.info("Response from Twitch Clip API: {}", response.getBody());
-                List<TwitchClip> clips = convertResponseBodyToTwitchClips(response, clipDuration, minimumViews);
-                allClips.addAll(clips);
-                log.info("All clips retrieved: {}", allClips);
-                afterCursor = null;
-//                afterCursor = extractAfterCursor(response); //TODO change back
-            } while (afterCursor != null);
+            fetchWindow(context, window.getStartedAt(), window.getEndedAt());
         } catch (Exception e) {
             log.error("Error fetching clips for streamer {}: {}", streamerName, e.getMessage(), e);
             throw new RuntimeException("Failed to fetch Twitch clips.", e);
         }
-        allClips.forEach(clip -> log.info("Clip ID: {}, View Count: {}", clip.getId(), clip.getViewCount()));
-        return allClips;
+        log.info("Fetched {} pages of clips for streamer {}", context.pages.get(), streamerName);
+        List<TwitchClip> allClips = context.topClips.toSortedList();
+        allClips.forEach(clip -> log.info("Clip ID: {}, View Count: {}", clip.getClipId(), clip.getViewCount()));
+        return new ClipFetchResult(broadcasterId, window, allClips);
     }
 
     /**
-     * Extract the cursor for the next page from the response body.
+     * Fetches the clips of a time window. If the first page shows that later pages may still enter the selection,
+     * the window is split in two halves fetched concurrently, down to a minimum window paginated through the cursor.
      *
-     * @param response The response body from the Twitch API.
-     * @return The cursor string for the next page, or null if there is no next page.
+     * @param context   The state shared by all windows of the fetch.
+     * @param startedAt The start of the window.
+     * @param endedAt   The end of the window.
+     * @throws Exception if a page cannot be fetched
      */
-    private static String extractAfterCursor(ResponseEntity<String> response) {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode jsonNode = objectMapper.readTree(response.getBody());
-            if (jsonNode.has("pagination") && jsonNode.get("pagination").has("cursor")) {
-                return jsonNode.get("pagination").get("cursor").asText();
+    private void fetchWindow(ClipFetchContext context, Instant startedAt, Instant endedAt) throws Exception {
+        ClipPage clipPage = fetchPage(context, startedAt, endedAt, null);
+        if (!hasRelevantNextPage(context, clipPage)) {
+            return;
+        }
+
+        Duration window = Duration.between(startedAt, endedAt);
+        if (window.compareTo(MIN_WINDOW) <= 0) {
+            while (hasRelevantNextPage(context, clipPage)) {
+                clipPage = fetchPage(context, startedAt, endedAt, clipPage.cursor);
             }
-        } catch (IOException e) {
-            log.error("Error extracting 'after' cursor: {}", e.getMessage(), e);
+            return;
+        }
+
+        Instant middle = startedAt.plus(window.dividedBy(2));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> olderHalf = executor.submit(() -> {
+                fetchWindow(context, startedAt, middle);
+                return null;
+            });
+            Future<?> newerHalf = executor.submit(() -> {
+                fetchWindow(context, middle, endedAt);
+                return null;
+            });
+            olderHalf.get();
+            newerHalf.get();
         }
-        return null;
     }
 
     /**
-     * Converts the response body from the Twitch API into a list of TwitchClip objects and sorts them by view count.
+     * Fetches a single page of clips of a time window and offers the clips that are not stored yet to the selection.
      *
-     * @param responseBody The response body from the RestTemplate call.
-     * @return A list of sorted TwitchClip objects.
+     * @param context     The state shared by all windows of the fetch.
+     * @param startedAt   The start of the window.
+     * @param endedAt     The end of the window.
+     * @param afterCursor The cursor of the page, or null for the first page.
+     * @return The page of clips
+     * @throws InterruptedException if interrupted while waiting for a fetch permit
      */
-    private static List<TwitchClip> convertResponseBodyToTwitchClips(ResponseEntity<String> responseBody, int durationOfClip, int minimumViews) {
-        List<TwitchClip> twitchClips = new ArrayList<>();
-        if (!responseBody.hasBody()) {
-            return twitchClips;
+    private ClipPage fetchPage(ClipFetchContext context, Instant startedAt, Instant endedAt, String afterCursor)
+            throws InterruptedException {
+        UriComponentsBuilder urlBuilder = UriComponentsBuilder.fromHttpUrl(TwitchConstants.TWITCH_CLIP_API)
+                .queryParam("broadcaster_id", context.broadcasterId)
+                .queryParam("started_at", startedAt)
+                .queryParam("ended_at", endedAt)
+                .queryParam("first", PAGE_SIZE);
+        if (afterCursor != null) {
+            urlBuilder.queryParam("after", afterCursor);
         }
+
+        ClipPage clipPage;
+        context.permits.acquire();
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode jsonNode = objectMapper.readTree(responseBody.getBody());
-            if (!jsonNode.has("data") || !jsonNode.get("data").isArray()) {
+            clipPage = context.restTemplate.execute(urlBuilder.toUriString(), HttpMethod.GET,
+                    request -> {
+                        request.getHeaders().putAll(context.headers);
+                        request.getHeaders().set("Authorization", "Bearer " + twitchAuthLogic.getOAuthToken());
+                    },
+                    response -> parseClipPage(response.getBody(), context.clipDuration, context.minimumViews));
+        } finally {
+            context.permits.release();
+        }
+        if (clipPage == null) {
+            clipPage = new ClipPage();
+        }
+        dropStoredClips(clipPage.clips).forEach(context.topClips::offer);
+        context.pages.incrementAndGet();
+        return clipPage;
+    }
+
+    /**
+     * Drops the clips of a page that are already stored, with a single lookup for the whole page.
+     * A stored clip was used by a previous highlight, and the most viewed ones come first in every page, so keeping
+     * them would fill the selection and end the pagination before any new clip could enter it.
+     * Stored clips are re-fetched by the overlap of the window and by full scans, their view counts are refreshed.
+     *
+     * @param clips The clips of a page.
+     * @return The clips that are not stored yet
+     */
+    private List<TwitchClip> dropStoredClips(List<TwitchClip> clips) {
+        if (clips.isEmpty()) {
+            return clips;
+        }
+        try (SqlSession session = sqlSessionFactory.openSession()) {
+            TwitchClipMapper mapper = session.getMapper(TwitchClipMapper.class);
+            Map<String, TwitchClip> storedClips = mapper
+                    .selectClipsByClipIds(clips.stream().map(TwitchClip::getClipId).toList())
+                    .stream()
+                    .collect(Collectors.toMap(TwitchClip::getClipId, Function.identity()));
+            if (storedClips.isEmpty()) {
+                return clips;
+            }
+
+            List<TwitchClip> newClips = new ArrayList<>();
+            for (TwitchClip clip : clips) {
+                TwitchClip storedClip = storedClips.get(clip.getClipId());
+                if (storedClip == null) {
+                    newClips.add(clip);
+                } else if (!Objects.equals(storedClip.getViewCount(), clip.getViewCount())) {
+                    mapper.updateViewCount(clip.getClipId(), clip.getViewCount());
+                }
+            }
+            session.commit();
+            return newClips;
+        }
+    }
+
+    /**
+     * Returns whether the page is followed by a page that may still enter the selection.
+     * Helix returns clips in descending view count, so a page whose last clip is below the minimum views
+     * or cannot enter the selection ends the window.
+     *
+     * @param context  The state shared by all windows of the fetch.
+     * @param clipPage The last fetched page.
+     * @return true if the next page is worth fetching
+     */
+    private static boolean hasRelevantNextPage(ClipFetchContext context, ClipPage clipPage) {
+        return clipPage.cursor != null
+                && clipPage.lowestViewCount != null
+                && clipPage.lowestViewCount >= context.minimumViews
+                && context.topClips.canAccept(clipPage.lowestViewCount);
+    }
+
+    /**
+     * Parses a page of the Helix clips endpoint in a single pass over the response stream.
+     * The clips of data[] are bound field by field and filtered inline, so only the clips that pass the filters are
+     * materialized, and pagination.cursor is read from the same pass.
+     *
+     * @param body           The response body stream.
+     * @param durationOfClip The minimum duration of a clip, in seconds.
+     * @param minimumViews   The minimum amount of views of a clip.
+     * @return The page of clips
+     * @throws IOException if the response cannot be read
+     */
+    private static ClipPage parseClipPage(InputStream body, int durationOfClip, int minimumViews) throws IOException {
+        ClipPage clipPage = new ClipPage();
+        try (JsonParser parser = HttpUtils.JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
                 log.warn("No clip data found.");
-                return twitchClips;
+                return clipPage;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("data".equals(fieldName) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        parseClip(parser, clipPage, durationOfClip, minimumViews);
+                    }
+                } else if ("pagination".equals(fieldName) && token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String paginationField = parser.currentName();
+                        parser.nextToken();
+                        if ("cursor".equals(paginationField)) {
+                            clipPage.cursor = parser.getValueAsString();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return clipPage;
+    }
+
+    /**
+     * Binds the clip object the parser is positioned on, and adds it to the page if it passes the filters.
+     *
+     * @param parser         The parser, positioned on the start of the clip object.
+     * @param clipPage       The page being parsed.
+     * @param durationOfClip The minimum duration of a clip, in seconds.
+     * @param minimumViews   The minimum amount of views of a clip.
+     * @throws IOException if the response cannot be read
+     */
+    private static void parseClip(JsonParser parser, ClipPage clipPage, int durationOfClip, int minimumViews)
+            throws IOException {
+        String clipId = null;
+        String title = null;
+        String creatorName = null;
+        int viewCount = 0;
+        String createdAt = null;
+        String broadcasterId = null;
+        String url = null;
+        int duration = 0;
+        String language = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            parser.nextToken();
+            switch (fieldName) {
+                case "id" -> clipId = parser.getValueAsString();
+                case "title" -> title = parser.getValueAsString();
+                case "creator_name" -> creatorName = parser.getValueAsString();
+                case "view_count" -> viewCount = parser.getValueAsInt();
+                case "created_at" -> createdAt = parser.getValueAsString();
+                case "broadcaster_id" -> broadcasterId = parser.getValueAsString();
+                case "url" -> url = parser.getValueAsString();
+                case "duration" -> duration = parser.getValueAsInt();
+                case "language" -> language = parser.getValueAsString();
+                default -> parser.skipChildren();
             }
-            ArrayNode clipsArray = (ArrayNode) jsonNode.get("data");
-
-            twitchClips = StreamSupport.stream(clipsArray.spliterator(), false)
-                    .map(clipNode -> {
-                        String createdAtString = clipNode.get("created_at").asText();
-                        LocalDateTime createdAt = LocalDateTime.parse(createdAtString, DateTimeFormatter.ISO_DATE_TIME);
-                        return new TwitchClip(
-                                null,
-                                clipNode.get("id").asText(),
-                                clipNode.get("title").asText(),
-                                clipNode.get("creator_name").asText().toLowerCase(),
-                                clipNode.get("view_count").asInt(),
-                                createdAt,
-                                clipNode.get("broadcaster_id").asText(),
-                                clipNode.get("url").asText(),
-                                clipNode.get("duration").asInt(),
-                                clipNode.get("language").asText()
-                        );
-                    })
-                    .filter(clip -> clip.getDuration() >= durationOfClip)
-                    .filter(clip -> clip.getViewCount() >= minimumViews)
-                    .sorted(Comparator.comparingInt(TwitchClip::getViewCount).reversed())   // Sort by viewCount (desc)
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            log.error("Error parsing response body: {}", e.getMessage(), e);
         }
-        return twitchClips;
+
+        clipPage.lowestViewCount = viewCount;
+        if (duration >= durationOfClip && viewCount >= minimumViews) {
+            clipPage.clips.add(new TwitchClip(
+                    null,
+                    clipId,
+                    title,
+                    creatorName == null ? null : creatorName.toLowerCase(),
+                    viewCount,
+                    LocalDateTime.parse(createdAt, DateTimeFormatter.ISO_DATE_TIME),
+                    broadcasterId,
+                    url,
+                    duration,
+                    language
+            ));
+        }
+    }
+
+    /**
+     * A page of clips returned by the Helix clips endpoint.
+     */
+    private static final class ClipPage {
+
+        private final List<TwitchClip> clips = new ArrayList<>();
+        private String cursor;
+        private Integer lowestViewCount; // view count of the last clip of the page, before filtering
+    }
+
+    /**
+     * State shared by all the windows of a single clip fetch.
+     */
+    @RequiredArgsConstructor
+    private static final class ClipFetchContext {
+
+        private final String broadcasterId;
+        private final HttpHeaders headers;
+        private final RestTemplate restTemplate;
+        private final TopKClipSelector topClips;
+        private final Semaphore permits;
+        private final int clipDuration;
+        private final int minimumViews;
+        private final AtomicInteger pages = new AtomicInteger();
     }
 }
@@ -0,0 +1,220 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.model.StoredClip;
+import com.apa.clipfarmer.utils.HttpUtils;
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Persistent on-disk store of downloaded clips, keyed by clip id, that survives across runs.
+ * The store is kept within a size budget by evicting the least recently used clips, and an index of the stored clips
+ * is written next to them so the access order survives restarts. Clips pinned by a running streamer are never evicted.
+ *
+ * @author alexpages
+ */
+@Service
+@Slf4j
+public class TwitchClipStore {
+
+    private static final String INDEX_FILENAME = "index.json";
+    private static final String CLIP_EXTENSION = ".mp4";
+
+    private final String directory;
+    private final long maxSizeMb;
+    private final Map<String, StoredClip> clips = new LinkedHashMap<>();
+    private final Map<String, Set<String>> pinsByOwner = new HashMap<>();
+
+    /**
+     * Creates the store and loads its index.
+     *
+     * @param directory The directory of the stored clips.
+     * @param maxSizeMb Size budget of the store. It may be exceeded while pinned clips are in use.
+     */
+    public TwitchClipStore(@Value("${clipfarmer.clip-store.directory:build/clip-store}") String directory,
+                           @Value("${clipfarmer.clip-store.max-size-mb:10240}") long maxSizeMb) {
+        this.directory = directory;
+        this.maxSizeMb = maxSizeMb;
+        loadIndex();
+    }
+
+    /**
+     * Loads the index of the store, dropping the clips whose file is gone and adopting the files it does not list.
+     */
+    private synchronized void loadIndex() {
+        Path indexPath = getIndexPath();
+        if (Files.isRegularFile(indexPath)) {
+            try {
+                List<StoredClip> storedClips = HttpUtils.OBJECT_MAPPER.readValue(indexPath.toFile(), new TypeReference<>() {
+                });
+                storedClips.stream()
+                        .filter(storedClip -> Files.isRegularFile(getPath(storedClip.getClipId())))
+                        .forEach(storedClip -> clips.put(storedClip.getClipId(), storedClip));
+            } catch (IOException e) {
+                log.error("Unable to read clip store index {}, rebuilding it: {}", indexPath, e.getMessage(), e);
+            }
+        }
+
+        Path storePath = Paths.get(directory);
+        if (Files.isDirectory(storePath)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(storePath, "*" + CLIP_EXTENSION)) {
+                for (Path file : files) {
+                    String clipId = file.getFileName().toString().replace(CLIP_EXTENSION, "");
+                    if (!clips.containsKey(clipId)) {
+                        clips.put(clipId, newStoredClip(clipId, Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Unable to scan clip store {}: {}", storePath, e.getMessage(), e);
+            }
+        }
+        log.info("Clip store {} holds {} clips ({} MB)", directory, clips.size(), getTotalSize() / (1024 * 1024));
+    }
+
+    /**
+     * Returns the path a clip is stored at, whether it is stored or not.
+     *
+     * @param clipId The id of the clip.
+     * @return The path of the clip file
+     */
+    public Path getPath(String clipId) {
+        return Paths.get(directory, clipId + CLIP_EXTENSION);
+    }
+
+    /**
+     * Pins a stored clip for an owner and marks it as recently used.
+     * The access time is only kept in memory until the index is saved, when the owner releases its pins.
+     *
+     * @param owner  The owner of the pin, usually the streamer being processed.
+     * @param clipId The id of the clip.
+     * @return The path of the clip, or empty if it is not stored
+     */
+    public synchronized Optional<Path> pin(String owner, String clipId) {
+        StoredClip storedClip = clips.get(clipId);
+        Path path = getPath(clipId);
+        if (storedClip == null || !Files.isRegularFile(path)) {
+            clips.remove(clipId);
+            return Optional.empty();
+        }
+        storedClip.setLastAccessedAt(System.currentTimeMillis());
+        pinsByOwner.computeIfAbsent(owner, key -> new HashSet<>()).add(clipId);
+        return Optional.of(path);
+    }
+
+    /**
+     * Adds a clip that has just been downloaded to its store path, pinned for an owner.
+     *
+     * @param owner  The owner of the pin, usually the streamer being processed.
+     * @param clipId The id of the clip.
+     * @return The path of the clip
+     * @throws IOException if the clip file cannot be read
+     */
+    public synchronized Path add(String owner, String clipId) throws IOException {
+        Path path = getPath(clipId);
+        clips.put(clipId, newStoredClip(clipId, Files.size(path), System.currentTimeMillis()));
+        pinsByOwner.computeIfAbsent(owner, key -> new HashSet<>()).add(clipId);
+        trimToBudget();
+        return path;
+    }
+
+    /**
+     * Removes a clip from the store, such as a stored file that turned out to be unplayable.
+     *
+     * @param clipId The id of the clip.
+     */
+    public synchronized void remove(String clipId) {
+        try {
+            Files.deleteIfExists(getPath(clipId));
+        } catch (IOException e) {
+            log.warn("Unable to delete stored clip {}: {}", clipId, e.getMessage());
+        }
+        clips.remove(clipId);
+        pinsByOwner.values().forEach(pinnedClipIds -> pinnedClipIds.remove(clipId));
+        saveIndex();
+    }
+
+    /**
+     * Releases the pins of an owner and evicts the least recently used clips until the store fits its budget.
+     *
+     * @param owner The owner whose pins are released.
+     */
+    public synchronized void release(String owner) {
+        pinsByOwner.remove(owner);
+        trimToBudget();
+    }
+
+    /**
+     * Evicts the least recently used unpinned clips until the store fits its budget, and saves the index.
+     */
+    private void trimToBudget() {
+        long maxSizeBytes = maxSizeMb * 1024 * 1024;
+        long totalSize = getTotalSize();
+        Set<String> pinnedClipIds = new HashSet<>();
+        pinsByOwner.values().forEach(pinnedClipIds::addAll);
+
+        List<StoredClip> evictionOrder = clips.values().stream()
+                .filter(storedClip -> !pinnedClipIds.contains(storedClip.getClipId()))
+                .sorted(Comparator.comparingLong(StoredClip::getLastAccessedAt))
+                .toList();
+        for (StoredClip storedClip : evictionOrder) {
+            if (totalSize <= maxSizeBytes) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(getPath(storedClip.getClipId()));
+                clips.remove(storedClip.getClipId());
+                totalSize -= storedClip.getSizeBytes();
+                log.info("Evicted clip {} from the clip store", storedClip.getClipId());
+            } catch (IOException e) {
+                log.warn("Unable to evict clip {}: {}", storedClip.getClipId(), e.getMessage());
+            }
+        }
+        saveIndex();
+    }
+
+    /**
+     * Writes the index to a temporary file and atomically replaces the previous one.
+     */
+    private void saveIndex() {
+        Path indexPath = getIndexPath();
+        Path tempPath = indexPath.resolveSibling(INDEX_FILENAME + ".tmp");
+        try {
+            Files.createDirectories(indexPath.getParent());
+            HttpUtils.OBJECT_MAPPER.writeValue(tempPath.toFile(), List.copyOf(clips.values()));
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Unable to write clip store index {}: {}", indexPath, e.getMessage(), e);
+        }
+    }
+
+    private long getTotalSize() {
+        return clips.values().stream().mapToLong(StoredClip::getSizeBytes).sum();
+    }
+
+    private Path getIndexPath() {
+        return Paths.get(directory, INDEX_FILENAME);
+    }
+
+    private static StoredClip newStoredClip(String clipId, long sizeBytes, long lastAccessedAt) {
+        StoredClip storedClip = new StoredClip();
+        storedClip.setClipId(clipId);
+        storedClip.setSizeBytes(sizeBytes);
+        storedClip.setLastAccessedAt(lastAccessedAt);
+        return storedClip;
+    }
+}
@@ -0,0 +1,114 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.mapper.TwitchClipWatermarkMapper;
+import com.apa.clipfarmer.model.ClipFetchWindow;
+import com.apa.clipfarmer.model.TwitchClipWatermark;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps a watermark per broadcaster so that clip fetches only cover the clips created since the previous run.
+ * The incremental window overlaps the previous one, so recent clips that were still gaining views get a second chance,
+ * and a periodic full scan goes over the whole look-back period again. The clips already stored that these windows
+ * fetch again are not selected twice, the fetch only refreshes their view counts.
+ *
+ * @author alexpages
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TwitchClipWatermarkLogic {
+
+    private final SqlSessionFactory sqlSessionFactory;
+
+    /**
+     * Time by which an incremental window starts before the end of the previous one.
+     */
+    @Value("${clipfarmer.watermark.overlap-hours:24}")
+    private final long overlapHours;
+
+    /**
+     * Time after which the whole look-back period is scanned again.
+     */
+    @Value("${clipfarmer.watermark.full-rescan-hours:72}")
+    private final long fullRescanHours;
+
+    /**
+     * Returns the window to fetch for a broadcaster: the delta since its watermark, or the whole look-back period
+     * if it has no watermark or its last full scan is too old.
+     *
+     * @param broadcasterId The ID of the broadcaster.
+     * @param daysAgo       The amount of days to look back.
+     * @return The window to fetch
+     */
+    public ClipFetchWindow getFetchWindow(String broadcasterId, int daysAgo) {
+        Instant endedAt = Instant.now();
+        Instant lookBackStart = endedAt.minus(daysAgo, ChronoUnit.DAYS);
+
+        TwitchClipWatermark watermark = selectWatermark(broadcasterId);
+        if (watermark == null || watermark.getFetchedUntil() == null || watermark.getLastFullScanAt() == null
+                || toInstant(watermark.getLastFullScanAt()).isBefore(endedAt.minus(Duration.ofHours(fullRescanHours)))) {
+            return new ClipFetchWindow(lookBackStart, endedAt, true);
+        }
+
+        Instant startedAt = toInstant(watermark.getFetchedUntil()).minus(Duration.ofHours(overlapHours));
+        if (startedAt.isBefore(lookBackStart)) {
+            startedAt = lookBackStart;
+        }
+        return new ClipFetchWindow(startedAt, endedAt, false);
+    }
+
+    /**
+     * Moves the watermark of a broadcaster to the end of a fetched window.
+     * Only called once the highlight built from the window has been uploaded, so a failed run fetches it again.
+     *
+     * @param broadcasterId The ID of the broadcaster.
+     * @param window        The fetched window.
+     */
+    public void advance(String broadcasterId, ClipFetchWindow window) {
+        try (SqlSession session = sqlSessionFactory.openSession()) {
+            TwitchClipWatermarkMapper mapper = session.getMapper(TwitchClipWatermarkMapper.class);
+            TwitchClipWatermark storedWatermark = mapper.selectByBroadcasterId(broadcasterId);
+            boolean exists = storedWatermark != null;
+            TwitchClipWatermark watermark = exists ? storedWatermark : new TwitchClipWatermark();
+            watermark.setBroadcasterId(broadcasterId);
+
+            LocalDateTime fetchedUntil = toLocalDateTime(window.getEndedAt());
+            watermark.setFetchedUntil(fetchedUntil);
+            if (window.isFullScan()) {
+                watermark.setLastFullScanAt(fetchedUntil);
+            }
+
+            if (exists) {
+                mapper.updateWatermark(watermark);
+            } else {
+                mapper.insertWatermark(watermark);
+            }
+            session.commit();
+            log.info("Clip watermark of broadcaster {} moved to {}", broadcasterId, fetchedUntil);
+        }
+    }
+
+    private TwitchClipWatermark selectWatermark(String broadcasterId) {
+        try (SqlSession session = sqlSessionFactory.openSession()) {
+            return session.getMapper(TwitchClipWatermarkMapper.class).selectByBroadcasterId(broadcasterId);
+        }
+    }
+
+    private static Instant toInstant(LocalDateTime utcDateTime) {
+        return utcDateTime.toInstant(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime toLocalDateTime(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS);
+    }
+}
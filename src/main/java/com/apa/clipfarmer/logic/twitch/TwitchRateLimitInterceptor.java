@@ -0,0 +1,126 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.model.TwitchConstants;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gates every Twitch API request sent through the shared RestTemplate.
+ * Helix requests take a point from a token bucket that follows the Ratelimit-* response headers, and GraphQL
+ * requests go through an AIMD concurrency limit. Throttled requests are retried with backoff instead of failing the run.
+ *
+ * @author alexpages
+ */
+@Slf4j
+@Component
+public class TwitchRateLimitInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final String HELIX_HOST = URI.create(TwitchConstants.TWITCH_CLIP_API).getHost();
+    private static final String GQL_HOST = URI.create(TwitchConstants.TWITCH_GQL_URL).getHost();
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+
+    private final HelixRateLimiter helixRateLimiter;
+    private final AimdConcurrencyLimiter gqlConcurrencyLimiter;
+    private final int maxRetries;
+
+    /**
+     * Creates the interceptor and its limiters.
+     *
+     * @param helixInitialLimit     Helix points per minute assumed until the first response reports the real budget.
+     * @param gqlInitialConcurrency Concurrent GraphQL requests allowed at start.
+     * @param gqlMaxConcurrency     Highest number of concurrent GraphQL requests.
+     * @param maxRetries            Times a throttled request is retried before its error is returned.
+     */
+    public TwitchRateLimitInterceptor(
+            @Value("${clipfarmer.ratelimit.helix.initial-limit:800}") int helixInitialLimit,
+            @Value("${clipfarmer.ratelimit.gql.initial-concurrency:4}") int gqlInitialConcurrency,
+            @Value("${clipfarmer.ratelimit.gql.max-concurrency:16}") int gqlMaxConcurrency,
+            @Value("${clipfarmer.ratelimit.max-retries:5}") int maxRetries) {
+        this.helixRateLimiter = new HelixRateLimiter(helixInitialLimit);
+        this.gqlConcurrencyLimiter = new AimdConcurrencyLimiter(gqlInitialConcurrency, 1, gqlMaxConcurrency);
+        this.maxRetries = maxRetries;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        String host = request.getURI().getHost();
+        try {
+            if (HELIX_HOST.equals(host)) {
+                return executeHelix(request, body, execution);
+            }
+            if (GQL_HOST.equals(host)) {
+                return executeGql(request, body, execution);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Twitch rate limit");
+        }
+        return execution.execute(request, body);
+    }
+
+    /**
+     * Sends a Helix request once the token bucket allows it, retrying it while it is throttled.
+     */
+    private ClientHttpResponse executeHelix(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            helixRateLimiter.acquire();
+            ClientHttpResponse response = execution.execute(request, body);
+            if (!isThrottled(response)) {
+                helixRateLimiter.update(response.getHeaders());
+                return response;
+            }
+            helixRateLimiter.onThrottled(response.getHeaders());
+            if (attempt >= maxRetries) {
+                log.error("Helix request {} still throttled after {} retries", request.getURI().getPath(), attempt);
+                return response;
+            }
+            log.warn("Helix request {} throttled, retrying once the rate limit resets", request.getURI().getPath());
+            response.close();
+        }
+    }
+
+    /**
+     * Sends a GraphQL request within the concurrency limit, retrying it with backoff while it is throttled.
+     */
+    private ClientHttpResponse executeGql(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            gqlConcurrencyLimiter.acquire();
+            ClientHttpResponse response;
+            // A request failing with an I/O error backs the limit off like a throttled one instead of growing it
+            boolean throttled = true;
+            try {
+                response = execution.execute(request, body);
+                throttled = isThrottled(response);
+            } finally {
+                gqlConcurrencyLimiter.release(throttled);
+            }
+            if (!throttled) {
+                return response;
+            }
+            if (attempt >= maxRetries) {
+                log.error("GraphQL request still throttled after {} retries", attempt);
+                return response;
+            }
+            response.close();
+            long backoffMillis = INITIAL_BACKOFF_MILLIS << attempt;
+            log.warn("GraphQL request throttled, retrying in {} ms", backoffMillis);
+            Thread.sleep(backoffMillis);
+        }
+    }
+
+    private static boolean isThrottled(ClientHttpResponse response) throws IOException {
+        return response.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS);
+    }
+}
@@ -0,0 +1,315 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.model.HttpFixture;
+import com.apa.clipfarmer.model.HttpReplayModeEnum;
+import com.apa.clipfarmer.utils.HttpUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * Records the Twitch API traffic of the shared RestTemplate to fixtures on disk, or replays it from them.
+ * Replayed responses can be delayed and replaced by errors, so the fetch and resolve paths can be benchmarked offline.
+ * <p>
+ * Fixtures are keyed by method, path, query and body. Secret query parameters are left out of the key and the
+ * fixture, recorded access tokens are redacted, and timestamps in the query are keyed by their exact distance to the
+ * newest timestamp sent for the same request scope, which is the end of the first window of a clip fetch. The split
+ * windows of a fetch therefore match between the recording and the replay whatever the time of the run.
+ * <p>
+ * The length of a fetch window still depends on the clip watermark of the broadcaster, so fixtures only replay against
+ * a reset watermark, which starts every fetch with a full scan of the look-back period.
+ *
+ * @author alexpages
+ */
+@Slf4j
+@Component
+public class TwitchReplayInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final Set<String> SECRET_PARAMETERS = Set.of("client_secret");
+    private static final Set<String> PAGINATION_PARAMETERS = Set.of("after");
+    private static final Set<String> RECORDED_HEADERS = Set.of(HttpHeaders.CONTENT_TYPE,
+            HelixRateLimiter.LIMIT_HEADER, HelixRateLimiter.REMAINING_HEADER, HelixRateLimiter.RESET_HEADER);
+    private static final String REDACTED = "REDACTED";
+
+    /**
+     * Newest timestamp sent per request scope, against which the timestamps of the scope are keyed.
+     */
+    private final Map<String, Instant> timestampAnchors = new ConcurrentHashMap<>();
+
+    @Value("${clipfarmer.http.replay.mode:OFF}")
+    private HttpReplayModeEnum mode;
+
+    @Value("${clipfarmer.http.replay.directory:build/fixtures}")
+    private String directory;
+
+    /**
+     * Latency added to every replayed response.
+     */
+    @Value("${clipfarmer.http.replay.latency-ms:0}")
+    private long latencyMillis;
+
+    /**
+     * Random latency added on top of the fixed latency.
+     */
+    @Value("${clipfarmer.http.replay.jitter-ms:0}")
+    private long jitterMillis;
+
+    /**
+     * Share of replayed requests answered with an error instead of their fixture.
+     */
+    @Value("${clipfarmer.http.replay.error-rate:0.0}")
+    private double errorRate;
+
+    /**
+     * Status of the injected errors.
+     */
+    @Value("${clipfarmer.http.replay.error-status:503}")
+    private int errorStatus;
+
+    /**
+     * Returns whether Twitch API traffic is recorded or replayed.
+     *
+     * @return true unless the mode is OFF
+     */
+    public boolean isEnabled() {
+        return mode != HttpReplayModeEnum.OFF;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        return switch (mode) {
+            case RECORD -> record(request, body, execution);
+            case REPLAY -> replay(request, body);
+            case OFF -> execution.execute(request, body);
+        };
+    }
+
+    /**
+     * Sends the request and stores its response as a fixture.
+     */
+    private ClientHttpResponse record(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        String requestKey = getRequestKey(request);
+        try (ClientHttpResponse response = execution.execute(request, body)) {
+            byte[] responseBody = StreamUtils.copyToByteArray(response.getBody());
+
+            HttpFixture fixture = new HttpFixture();
+            fixture.setRequest(requestKey);
+            fixture.setStatus(response.getStatusCode().value());
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            response.getHeaders().forEach((name, values) -> {
+                if (RECORDED_HEADERS.stream().anyMatch(name::equalsIgnoreCase)) {
+                    headers.put(name, values);
+                }
+            });
+            fixture.setHeaders(headers);
+            fixture.setBody(redactSecrets(new String(responseBody, StandardCharsets.UTF_8)));
+            writeFixture(getFixturePath(request, requestKey, body), fixture);
+
+            return new ReplayedResponse(response.getStatusCode(), response.getHeaders(), responseBody);
+        }
+    }
+
+    /**
+     * Answers the request from its fixture, after the configured latency, or with an injected error.
+     */
+    private ClientHttpResponse replay(HttpRequest request, byte[] body) throws IOException {
+        String requestKey = getRequestKey(request);
+        Path fixturePath = getFixturePath(request, requestKey, body);
+        if (!Files.isRegularFile(fixturePath)) {
+            throw new IOException("No recorded fixture for " + requestKey + " at " + fixturePath);
+        }
+        HttpFixture fixture = HttpUtils.OBJECT_MAPPER.readValue(fixturePath.toFile(), HttpFixture.class);
+
+        simulateLatency();
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            log.debug("Injecting HTTP {} for {}", errorStatus, requestKey);
+            return new ReplayedResponse(HttpStatusCode.valueOf(errorStatus), new HttpHeaders(), new byte[0]);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        if (fixture.getHeaders() != null) {
+            fixture.getHeaders().forEach(headers::addAll);
+        }
+        byte[] responseBody = fixture.getBody() == null ? new byte[0] : fixture.getBody().getBytes(StandardCharsets.UTF_8);
+        return new ReplayedResponse(HttpStatusCode.valueOf(fixture.getStatus()), headers, responseBody);
+    }
+
+    private void simulateLatency() throws InterruptedIOException {
+        long delayMillis = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (delayMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while replaying a response");
+        }
+    }
+
+    /**
+     * Builds the key of a request from its method, host, path and sorted query, without secrets.
+     * Timestamps in the query are replaced by their exact distance to the anchor of the request scope: the newest
+     * timestamp sent with the same method, path and other query parameters, pagination aside.
+     */
+    private String getRequestKey(HttpRequest request) {
+        Map<String, List<String>> queryParams = new TreeMap<>();
+        UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().forEach((name, values) -> {
+            if (!SECRET_PARAMETERS.contains(name)) {
+                queryParams.put(name, values.stream()
+                        .map(value -> value == null ? "" : UriUtils.decode(value, StandardCharsets.UTF_8))
+                        .toList());
+            }
+        });
+        String prefix = request.getMethod().name() + ' ' + request.getURI().getHost() + request.getURI().getPath();
+
+        StringBuilder scope = new StringBuilder(prefix);
+        Instant newestTimestamp = null;
+        for (Map.Entry<String, List<String>> queryParam : queryParams.entrySet()) {
+            for (String value : queryParam.getValue()) {
+                Instant timestamp = parseTimestamp(value);
+                if (timestamp != null) {
+                    newestTimestamp = newestTimestamp == null || timestamp.isAfter(newestTimestamp)
+                            ? timestamp : newestTimestamp;
+                } else if (!PAGINATION_PARAMETERS.contains(queryParam.getKey())) {
+                    scope.append('&').append(queryParam.getKey()).append('=').append(value);
+                }
+            }
+        }
+        // The first window of a fetch ends last, so later windows of the same fetch never move the anchor
+        Instant anchor = newestTimestamp == null ? null : timestampAnchors.merge(scope.toString(), newestTimestamp,
+                (current, candidate) -> candidate.isAfter(current) ? candidate : current);
+
+        StringBuilder key = new StringBuilder(prefix);
+        char separator = '?';
+        for (Map.Entry<String, List<String>> queryParam : queryParams.entrySet()) {
+            for (String value : queryParam.getValue()) {
+                Instant timestamp = parseTimestamp(value);
+                key.append(separator).append(queryParam.getKey()).append('=')
+                        .append(timestamp == null ? value : "anchor-" + Duration.between(timestamp, anchor));
+                separator = '&';
+            }
+        }
+        return key.toString();
+    }
+
+    private static Instant parseTimestamp(String value) {
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private Path getFixturePath(HttpRequest request, String requestKey, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(requestKey.getBytes(StandardCharsets.UTF_8));
+            digest.update(body);
+            String hash = HexFormat.of().formatHex(digest.digest()).substring(0, 24);
+            return Paths.get(directory, request.getURI().getHost(), request.getMethod().name() + "_" + hash + ".json");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static void writeFixture(Path fixturePath, HttpFixture fixture) throws IOException {
+        Files.createDirectories(fixturePath.getParent());
+        Path tempPath = fixturePath.resolveSibling(fixturePath.getFileName() + ".tmp");
+        HttpUtils.OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(tempPath.toFile(), fixture);
+        Files.move(tempPath, fixturePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Recorded {} to {}", fixture.getRequest(), fixturePath);
+    }
+
+    /**
+     * Replaces the access token of an OAuth response, so recorded fixtures hold no credentials.
+     */
+    private static String redactSecrets(String body) {
+        try {
+            JsonNode jsonNode = HttpUtils.OBJECT_MAPPER.readTree(body);
+            if (jsonNode instanceof ObjectNode objectNode && objectNode.has("access_token")) {
+                objectNode.put("access_token", REDACTED);
+                return HttpUtils.OBJECT_MAPPER.writeValueAsString(objectNode);
+            }
+        } catch (IOException e) {
+            log.debug("Recorded body is not JSON, storing it as is");
+        }
+        return body;
+    }
+
+    /**
+     * Response buffered in memory, either recorded or replayed.
+     */
+    private static final class ReplayedResponse implements ClientHttpResponse {
+
+        private final HttpStatusCode statusCode;
+        private final HttpHeaders headers;
+        private final byte[] body;
+
+        private ReplayedResponse(HttpStatusCode statusCode, HttpHeaders headers, byte[] body) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String getStatusText() {
+            return "";
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release, the body is held in memory
+        }
+    }
+}
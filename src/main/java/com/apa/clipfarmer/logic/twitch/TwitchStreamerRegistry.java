@@ -0,0 +1,74 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.mapper.TwitchStreamerMapper;
+import com.apa.clipfarmer.model.TwitchStreamer;
+import com.apa.clipfarmer.utils.ExpiringLruCache;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * In-process registry of the streamers stored in the twitch_streamer table, shared by all services.
+ * Lookups by streamer name are served from memory and read through to the database on a miss.
+ *
+ * @author alexpages
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TwitchStreamerRegistry {
+
+    private final SqlSessionFactory sqlSessionFactory;
+
+    /**
+     * Maximum number of streamers kept in memory.
+     */
+    @Value("${clipfarmer.streamer-cache.max-size:100}")
+    private int maxSize;
+
+    /**
+     * Time a streamer stays in memory before it is read again from the database.
+     */
+    @Value("${clipfarmer.streamer-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    private ExpiringLruCache<String, TwitchStreamer> streamers;
+
+    @PostConstruct
+    void initCache() {
+        streamers = new ExpiringLruCache<>(maxSize, Duration.ofMinutes(ttlMinutes));
+    }
+
+    /**
+     * Returns a streamer by its Twitch login name.
+     *
+     * @param twitchStreamerName The Twitch login name of the streamer.
+     * @return The streamer, or empty if it is not stored in the database
+     */
+    public Optional<TwitchStreamer> getStreamer(String twitchStreamerName) {
+        return streamers.getOrLoad(twitchStreamerName, this::selectStreamer);
+    }
+
+    /**
+     * Stores a streamer that has just been inserted in the database.
+     *
+     * @param twitchStreamer The streamer.
+     */
+    public void register(TwitchStreamer twitchStreamer) {
+        streamers.put(twitchStreamer.getTwitchStreamerName(), twitchStreamer);
+    }
+
+    private TwitchStreamer selectStreamer(String twitchStreamerName) {
+        try (SqlSession session = sqlSessionFactory.openSession()) {
+            TwitchStreamer twitchStreamer = session.getMapper(TwitchStreamerMapper.class).selectByTwitchStreamerName(twitchStreamerName);
+            log.debug("Streamer {} loaded from the database: {}", twitchStreamerName, twitchStreamer);
+            return twitchStreamer;
+        }
+    }
+}
@@ -29,15 +29,26 @@ import org.springframework.web.util.UriComponentsBuilder;
 public class TwitchUserLogic {
 
     private final SqlSessionFactory sqlSessionFactory;
+    private final RestTemplate restTemplate;
+    private final TwitchStreamerRegistry twitchStreamerRegistry;
+    private final TwitchAuthLogic twitchAuthLogic;
 
     /**
      * Retrieves the broadcaster ID for a given streamer name.
+     * Streamers already stored in the database are resolved without calling the Twitch API.
      *
      * @param streamerName the name of the streamer.
-     * @param oAuthToken   the OAuth token for authentication.
      * @return the broadcaster ID.
      */
-    public String getBroadcasterId(String streamerName, String oAuthToken) {
+    public String getBroadcasterId(String streamerName) {
+        Optional<String> oStoredBroadcasterId = twitchStreamerRegistry.getStreamer(streamerName)
+                .map(TwitchStreamer::getBroadcasterId)
+                .filter(broadcasterId -> !broadcasterId.isEmpty());
+        if (oStoredBroadcasterId.isPresent()) {
+            log.info("Broadcaster ID of {} found in the streamer registry: {}", streamerName, oStoredBroadcasterId.get());
+            return oStoredBroadcasterId.get();
+        }
+
         String url = UriComponentsBuilder.fromHttpUrl(TwitchConstants.TWITCH_USERS_API)
                 .queryParam("login", streamerName)
                 .toUriString();
@@ -45,11 +56,10 @@ public class TwitchUserLogic {
         // Set up headers for the request
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.set("Authorization", "Bearer " + oAuthToken);
+        headers.set("Authorization", "Bearer " + twitchAuthLogic.getOAuthToken());
         headers.set("Client-Id", TwitchConstants.TWITCH_CLIENT_ID);
         HttpEntity<String> entity = new HttpEntity<>(headers);
 
-        RestTemplate restTemplate = new RestTemplate();
         try {
             ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
             if (!response.getStatusCode().is2xxSuccessful()) {
@@ -99,6 +109,7 @@ public class TwitchUserLogic {
 
             if (existingStreamer != null) {
                 log.info("Streamer with broadcaster ID {} already exists. Skipping insertion.", broadcasterId);
+                twitchStreamerRegistry.register(existingStreamer);
                 return;
             }
 
@@ -108,6 +119,7 @@ public class TwitchUserLogic {
 
             session.insert("com.apa.clipfarmer.mapper.TwitchStreamerMapper.insertStreamer", twitchStreamer);
             session.commit();
+            twitchStreamerRegistry.register(twitchStreamer);
             log.info("Streamer {} with broadcaster ID {} inserted into the database.", streamerName, broadcasterId);
         } catch (Exception e) {
             // Log the error and throw a RuntimeException if insertion fails
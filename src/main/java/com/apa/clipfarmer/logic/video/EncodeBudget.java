@@ -0,0 +1,51 @@
+package com.apa.clipfarmer.logic.video;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Budget of the ffmpeg encodes, shared by the pipeline and {@link VideoLogic} without initializing the lazy video logic.
+ *
+ * @author alexpages
+ */
+@Component
+@Slf4j
+public class EncodeBudget {
+
+    private final int concurrency;
+    private final int threadsPerProcess;
+
+    /**
+     * Creates the budget, sized to the available cores when it is not configured.
+     *
+     * @param concurrency       Maximum number of clips encoded at the same time, 0 sizes it to the available cores.
+     * @param threadsPerProcess Threads used by every ffmpeg process, so concurrent encodes do not oversubscribe the cores.
+     */
+    public EncodeBudget(@Value("${clipfarmer.encode.concurrency:0}") int concurrency,
+                        @Value("${clipfarmer.encode.threads-per-process:2}") int threadsPerProcess) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.threadsPerProcess = Math.max(1, threadsPerProcess);
+        this.concurrency = concurrency > 0 ? concurrency : Math.max(1, cores / this.threadsPerProcess);
+        log.info("Encoding up to {} clips at the same time with {} threads each on {} cores",
+                this.concurrency, this.threadsPerProcess, cores);
+    }
+
+    /**
+     * Returns the maximum number of clips encoded at the same time.
+     *
+     * @return The encode concurrency
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Returns the threads used by every ffmpeg process.
+     *
+     * @return The threads per process
+     */
+    public int getThreadsPerProcess() {
+        return threadsPerProcess;
+    }
+}
@@ -1,9 +1,11 @@
 package com.apa.clipfarmer.logic.video;
 
+import com.apa.clipfarmer.model.Mp4Metadata;
 import java.util.Locale;
-import java.util.Map;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import java.io.BufferedReader;
@@ -22,107 +24,126 @@ import java.util.List;
  * @author alexpages
  */
 @Service
+@Lazy
 @RequiredArgsConstructor
 @Slf4j
 public class VideoLogic {
 
-    private static final String OUTPUT_FOLDER = "build/output/";
     private static final double TRANSITION_DURATION = 0.15; // Transition duration in seconds
 
+    private final EncodeBudget encodeBudget;
+
+    /**
+     * Height of the video built in a single pass, clips are scaled and padded to it.
+     */
+    @Value("${clipfarmer.video.target-height:720}")
+    private final int targetHeight;
+
+    /**
+     * Frame rate of the video built in a single pass.
+     */
+    @Value("${clipfarmer.video.target-fps:30}")
+    private final double targetFrameRate;
+
     /**
-     * Concatenates multiple video files into a single output file with smooth transitions.
+     * Re-encodes a single clip with fade in/out transitions for both video and audio.
      *
-     * @param clipDurationsMap   Map of video file paths and their respective durations.
-     * @param outputFileName     Name of the output file.
-     * @return The path to the output file, or null if concatenation failed.
+     * @param inputFile    Path of the clip to process.
+     * @param clipDuration Duration of the clip in seconds.
+     * @param index          Position of the clip in the final video, used to name the processed file.
+     * @param outputFileName Name of the final output file, whose folder holds the processed clips.
+     * @return The path to the processed clip, or null if processing failed.
      */
-    public String concatenateVideos(Map<String, Double> clipDurationsMap, String outputFileName) {
-        long startTime = System.currentTimeMillis();
+    public String applyTransitions(String inputFile, double clipDuration, int index, String outputFileName) {
+        // Create temporary folder for processed clips next to the output file
+        File tempDir = getTempDirectory(outputFileName);
+        tempDir.mkdirs();
 
-        log.info("This is the map of videos and durations to process: {}", clipDurationsMap.toString());
+        File processedFile = new File(tempDir, "clip_" + index + ".mp4");
+        String processedFilePath = processedFile.getAbsolutePath();
+        log.debug("Processing clip {}: {} -> {}", index, inputFile, processedFilePath);
 
-        // Ensure output directory exists
-        File outputDir = new File(OUTPUT_FOLDER);
-        outputDir.mkdirs();
+        List<String> command = createTransitionCommand(inputFile, clipDuration, processedFilePath);
 
-        if (clipDurationsMap == null || clipDurationsMap.isEmpty()) {
-            log.error("No video files provided for concatenation.");
+        try {
+            executeFFmpegCommand(command.toArray(new String[0]));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while processing clip: {}", inputFile);
+            return null;
+        } catch (Exception e) {
+            log.error("Error processing clip: {}", inputFile, e);
             return null;
         }
 
-        // Verify all input files exist before starting
-        for (String path : clipDurationsMap.keySet()) {
-            File file = new File(path);
-            if (!file.exists() || !file.isFile()) {
-                log.error("Input file does not exist or is not accessible: {}", path);
-                return null;
-            }
+        // Verify the processed file was created
+        if (!processedFile.exists()) {
+            log.error("Failed to create processed clip: {}", processedFilePath);
+            return null;
         }
+        return processedFilePath;
+    }
 
-        log.info("Starting video concatenation with synchronized audio/video transitions: {}", outputFileName);
+    /**
+     * Creates the ffmpeg command that re-encodes a clip with fade in/out transitions.
+     * The decoder, the filters and the encoder each get the threads of a single process in the encode budget,
+     * since ffmpeg sizes each of them to the cores of the machine otherwise.
+     */
+    List<String> createTransitionCommand(String inputFile, double clipDuration, String processedFilePath) {
+        String threads = String.valueOf(encodeBudget.getThreadsPerProcess());
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        command.add("-filter_threads");
+        command.add(threads);
+        command.add("-threads");
+        command.add(threads);
+        command.add("-i");
+        command.add(inputFile);
+
+        // Fade in and fade out for all clips, using clip's duration
+        command.add("-vf");
+        command.add(String.format(Locale.US, "fade=t=in:st=0:d=%f,fade=t=out:st=%f:d=%f",
+                TRANSITION_DURATION,
+                clipDuration - TRANSITION_DURATION,
+                TRANSITION_DURATION));
+        command.add("-af");
+        command.add(String.format(Locale.US,"afade=t=in:st=0:d=%f,afade=t=out:st=%f:d=%f",
+                TRANSITION_DURATION,
+                clipDuration - TRANSITION_DURATION,
+                TRANSITION_DURATION));
+        command.add("-threads");
+        command.add(threads);
+        command.add("-y"); // Overwrite output files without asking
+        command.add(processedFilePath);
+        return command;
+    }
 
-        // Create absolute path for output file if it's a relative path
-        File outputFile = new File(outputFileName);
-        if (!outputFile.isAbsolute()) {
-            outputFile = new File(System.getProperty("user.dir"), outputFileName);
+    /**
+     * Concatenates clips already processed by {@link #applyTransitions} into a single output file,
+     * then removes the processed clips.
+     *
+     * @param processedClips Ordered paths of the processed clips.
+     * @param outputFileName Name of the output file.
+     * @return The path to the output file, or null if concatenation failed.
+     */
+    public String concatenateProcessedClips(List<String> processedClips, String outputFileName) {
+        if (processedClips == null || processedClips.isEmpty()) {
+            log.error("No processed clips provided for concatenation.");
+            return null;
         }
 
+        File outputFile = toAbsoluteFile(outputFileName);
+        outputFile.getParentFile().mkdirs();
+        File tempDir = getTempDirectory(outputFileName);
+
         if (outputFile.exists() && !outputFile.delete()) {
             log.error("Failed to delete existing output file: {}", outputFile.getAbsolutePath());
             return null;
         }
 
         try {
-            // Create temporary folder for processed clips with absolute path
-            File tempDir = new File(System.getProperty("user.dir"), OUTPUT_FOLDER + "temp");
-            tempDir.mkdirs();
-            log.debug("Created temp directory at: {}", tempDir.getAbsolutePath());
-
-            List<String> processedClips = new ArrayList<>();
-
-            // Process each clip with fade in/out for both video and audio
-            int i = 0;
-            for (Map.Entry<String, Double> entry : clipDurationsMap.entrySet()) {
-                String inputFile = entry.getKey();
-                double clipDuration = entry.getValue();
-
-                File processedFile = new File(tempDir, "clip_" + i + ".mp4");
-                String processedFilePath = processedFile.getAbsolutePath();
-                processedClips.add(processedFilePath);
-
-                log.debug("Processing clip {}: {} -> {}", i, inputFile, processedFilePath);
-
-                List<String> command = new ArrayList<>();
-                command.add("ffmpeg");
-                command.add("-i");
-                command.add(inputFile);
-
-                // Fade in and fade out for all clips, using clip's duration
-                command.add("-vf");
-                command.add(String.format(Locale.US, "fade=t=in:st=0:d=%f,fade=t=out:st=%f:d=%f",
-                        TRANSITION_DURATION,
-                        clipDuration - TRANSITION_DURATION,
-                        TRANSITION_DURATION));
-                command.add("-af");
-                command.add(String.format(Locale.US,"afade=t=in:st=0:d=%f,afade=t=out:st=%f:d=%f",
-                        TRANSITION_DURATION,
-                        clipDuration - TRANSITION_DURATION,
-                        TRANSITION_DURATION));
-                command.add("-y"); // Overwrite output files without asking
-                command.add(processedFilePath);
-
-                executeFFmpegCommand(command.toArray(new String[0]));
-
-                // Verify the processed file was created
-                if (!processedFile.exists()) {
-                    log.error("Failed to create processed clip: {}", processedFilePath);
-                    return null;
-                }
-                i++;
-            }
-
             // Create a temporary file to store concatenation input
-            File tempFile = createConcatFile(processedClips);
+            File tempFile = createConcatFile(processedClips, tempDir);
             if (tempFile == null) {
                 log.error("Failed to create concat input file.");
                 return null;
@@ -163,12 +184,148 @@ public class VideoLogic {
         } catch (Exception e) {
             log.error("Error during video processing", e);
             return null;
-        } finally {
-            long elapsedTime = (System.currentTimeMillis() - startTime) / 1000;
-            log.info("Video processing took {} seconds", elapsedTime);
         }
     }
 
+    /**
+     * Builds the output file from the downloaded clips in a single ffmpeg process, with one filter graph that
+     * normalizes the resolution and frame rate of every clip and joins them with xfade/acrossfade transitions.
+     * Every frame is decoded and encoded once, and no intermediate clip is written to disk.
+     *
+     * @param clipPaths      Ordered paths of the downloaded clips.
+     * @param clipDurations  Durations of the clips in seconds, in the same order.
+     * @param clipMetadata   Metadata of the clips probed after download, in the same order, null entries if unknown.
+     * @param outputFileName Name of the output file.
+     * @return The path to the output file, or null if compilation failed.
+     */
+    public String compileClips(List<String> clipPaths, List<Double> clipDurations, List<Mp4Metadata> clipMetadata,
+                               String outputFileName) {
+        if (clipPaths == null || clipPaths.isEmpty()) {
+            log.error("No clips provided for compilation.");
+            return null;
+        }
+        long startTime = System.currentTimeMillis();
+        File outputFile = toAbsoluteFile(outputFileName);
+        outputFile.getParentFile().mkdirs();
+
+        List<String> command = createCompileCommand(clipPaths, clipDurations, clipMetadata,
+                outputFile.getAbsolutePath());
+
+        log.info("Compiling {} clips in a single pass: {}", clipPaths.size(), outputFileName);
+        try {
+            executeFFmpegCommand(command.toArray(new String[0]));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while compiling clips for: {}", outputFileName);
+            return null;
+        } catch (Exception e) {
+            log.error("Error compiling clips for: {}", outputFileName, e);
+            return null;
+        }
+
+        if (!outputFile.isFile()) {
+            log.error("Failed to create compiled video: {}", outputFile.getAbsolutePath());
+            return null;
+        }
+        log.info("Video compilation completed successfully in {} seconds: {}",
+                (System.currentTimeMillis() - startTime) / 1000, outputFile.getAbsolutePath());
+        return outputFile.getAbsolutePath();
+    }
+
+    /**
+     * Creates the ffmpeg command of a single pass compilation, with the decoders, the filter graph and the encoder
+     * capped to the threads of a single process in the encode budget.
+     */
+    List<String> createCompileCommand(List<String> clipPaths, List<Double> clipDurations, List<Mp4Metadata> clipMetadata,
+                                      String outputPath) {
+        String threads = String.valueOf(encodeBudget.getThreadsPerProcess());
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        command.add("-filter_complex_threads");
+        command.add(threads);
+        for (String clipPath : clipPaths) {
+            command.add("-threads");
+            command.add(threads);
+            command.add("-i");
+            command.add(clipPath);
+        }
+        command.add("-filter_complex");
+        command.add(createFilterGraph(clipPaths, clipDurations, clipMetadata));
+        command.add("-map");
+        command.add("[vout]");
+        command.add("-map");
+        command.add("[aout]");
+        command.add("-c:v");
+        command.add("libx264");
+        command.add("-preset");
+        command.add("veryfast");
+        command.add("-crf");
+        command.add("20");
+        command.add("-pix_fmt");
+        command.add("yuv420p");
+        command.add("-c:a");
+        command.add("aac");
+        command.add("-b:a");
+        command.add("160k");
+        command.add("-movflags");
+        command.add("+faststart");
+        command.add("-threads");
+        command.add(threads);
+        command.add("-y"); // Overwrite output files without asking
+        command.add(outputPath);
+        return command;
+    }
+
+    /**
+     * Creates the filter graph of a single pass compilation. Every input is scaled and padded to the target
+     * resolution, resampled to the target frame rate and audio format, and chained to the previous ones with
+     * a crossfade that starts the transition duration before the end of the previous clip.
+     * A clip without audio gets a silent track, so every crossfade has both streams, and a clip whose metadata is
+     * unknown is assumed to have audio.
+     */
+    String createFilterGraph(List<String> clipPaths, List<Double> clipDurations, List<Mp4Metadata> clipMetadata) {
+        int height = targetHeight - targetHeight % 2;
+        int width = (int) Math.round(height * 16 / 9.0 / 2) * 2;
+        double minDuration = clipDurations.stream().mapToDouble(Double::doubleValue).min().orElse(0);
+        double transition = Math.min(TRANSITION_DURATION, minDuration / 2);
+
+        List<String> filters = new ArrayList<>();
+        for (int i = 0; i < clipPaths.size(); i++) {
+            filters.add(String.format(Locale.US,
+                    "[%d:v]scale=%d:%d:force_original_aspect_ratio=decrease,pad=%d:%d:(ow-iw)/2:(oh-ih)/2,setsar=1,"
+                            + "fps=%f,format=yuv420p,settb=AVTB,setpts=PTS-STARTPTS[v%d]",
+                    i, width, height, width, height, targetFrameRate, i));
+            Mp4Metadata metadata = clipMetadata.get(i);
+            boolean hasAudio = metadata == null || metadata.getAudioCodec() != null;
+            if (hasAudio) {
+                filters.add(String.format(Locale.US,
+                        "[%d:a]aformat=sample_rates=48000:channel_layouts=stereo,asetpts=PTS-STARTPTS[a%d]", i, i));
+            } else {
+                filters.add(String.format(Locale.US,
+                        "anullsrc=r=48000:cl=stereo,atrim=duration=%f[a%d]", clipDurations.get(i), i));
+            }
+        }
+
+        String video = "[v0]";
+        String audio = "[a0]";
+        double offset = 0;
+        for (int i = 1; i < clipPaths.size(); i++) {
+            offset += clipDurations.get(i - 1) - transition;
+            String nextVideo = i == clipPaths.size() - 1 ? "[vout]" : "[vx" + i + "]";
+            String nextAudio = i == clipPaths.size() - 1 ? "[aout]" : "[ax" + i + "]";
+            filters.add(String.format(Locale.US, "%s[v%d]xfade=transition=fade:duration=%f:offset=%f%s",
+                    video, i, transition, offset, nextVideo));
+            filters.add(String.format(Locale.US, "%s[a%d]acrossfade=d=%f%s", audio, i, transition, nextAudio));
+            video = nextVideo;
+            audio = nextAudio;
+        }
+        if (clipPaths.size() == 1) {
+            filters.add("[v0]null[vout]");
+            filters.add("[a0]anull[aout]");
+        }
+        return String.join(";", filters);
+    }
+
     /**
      * Executes an FFmpeg command using array of arguments to handle paths with spaces correctly.
      */
@@ -206,11 +363,31 @@ public class VideoLogic {
         }
     }
 
+    /**
+     * Resolves a relative output file name against the working directory.
+     */
+    private File toAbsoluteFile(String outputFileName) {
+        File outputFile = new File(outputFileName);
+        if (!outputFile.isAbsolute()) {
+            outputFile = new File(System.getProperty("user.dir"), outputFileName);
+        }
+        return outputFile;
+    }
+
+    /**
+     * Returns the temporary folder used for the processed clips of an output file.
+     * Each output file gets its own folder, so several videos can be built at the same time.
+     */
+    private File getTempDirectory(String outputFileName) {
+        return new File(toAbsoluteFile(outputFileName).getParentFile(), "temp");
+    }
+
     /**
      * Creates a temporary text file listing the input video paths for FFmpeg.
      */
-    private File createConcatFile(List<String> videoPaths) {
-        File tempFile = new File(System.getProperty("user.dir"), OUTPUT_FOLDER + "input.txt");
+    private File createConcatFile(List<String> videoPaths, File tempDir) {
+        tempDir.mkdirs();
+        File tempFile = new File(tempDir, "input.txt");
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
             for (String videoPath : videoPaths) {
                 // Use proper escaping for paths in the concat file
@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.List;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 /**
@@ -25,6 +26,7 @@ import org.springframework.stereotype.Service;
  * @auth alexpages
  */
 @Service
+@Lazy
 public class YoutubeAuth {
 
     public static final HttpTransport HTTP_TRANSPORT = new NetHttpTransport();
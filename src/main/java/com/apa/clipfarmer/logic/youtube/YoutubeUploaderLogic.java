@@ -1,6 +1,8 @@
 package com.apa.clipfarmer.logic.youtube;
 
+import com.apa.clipfarmer.logic.BandwidthScheduler;
 import com.apa.clipfarmer.mapper.TwitchHighlightMapper;
+import com.apa.clipfarmer.model.BandwidthPriorityEnum;
 import com.apa.clipfarmer.model.TwitchHighlight;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
@@ -22,6 +24,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 /**
@@ -32,13 +35,15 @@ import org.springframework.stereotype.Service;
  */
 @Slf4j
 @Service
+@Lazy
 @RequiredArgsConstructor
 public class YoutubeUploaderLogic {
 
     private final SqlSessionFactory sqlSessionFactory;
+    private final BandwidthScheduler bandwidthScheduler;
 
     /**
-     * For YouTube Data API requests.
+     * For YouTube Data API requests. Built once and shared by every upload.
      */
     private static YouTube youtube;
 
@@ -51,36 +56,26 @@ public class YoutubeUploaderLogic {
      * Upload the user-selected video to the user's YouTube channel. The code
      * looks for the video in the application's project folder and uses OAuth
      * 2.0 to authorize the API request.
+     *
+     * @return true if the video was uploaded, false otherwise
      */
-    public void uploadHighlightVideo(String youtubeTitle, String youtubeDescription, String pathFileToUpload, String broadcasterId) {
+    public boolean uploadHighlightVideo(String youtubeTitle, String youtubeDescription, String pathFileToUpload, String broadcasterId) {
         log.info("Youtube Title for the next upload: {}", youtubeTitle);
         log.info("Youtube Description for the next upload: {}", youtubeDescription);
         log.info("Path to the file to be uploaded: {}", pathFileToUpload);
 
-        // This OAuth 2.0 access scope allows an application to upload files
-        // to the authenticated user's YouTube channel.
-        List<String> scopes = Lists.newArrayList("https://www.googleapis.com/auth/youtube.upload");
-
         Video returnedVideo = null;
         try {
-            // Authorize the request.
-            Credential credential = YoutubeAuth.authorize(scopes, "uploadvideo");
-            log.info("OAuth 2.0 authorization successful. Access token: {}", credential.getAccessToken());
-            log.info("Access token expiry time: {}", credential.getExpirationTimeMilliseconds());
-
-            // This object is used to make YouTube Data API requests.
-            youtube = new YouTube.Builder(
-                    YoutubeAuth.HTTP_TRANSPORT,
-                    YoutubeAuth.JSON_FACTORY,
-                    credential).setApplicationName("clipfarmer")
-                    .build();
+            YouTube youtube = getYoutube();
 
             System.out.println("Uploading: " + pathFileToUpload);
 
             // Add extra information to the video before uploading.
             Video videoObjectDefiningMetadata = getMetadata(youtubeTitle, youtubeDescription, broadcasterId);
             File videoFile = new File(pathFileToUpload);
-            InputStreamContent mediaContent = new InputStreamContent(VIDEO_FILE_FORMAT, new FileInputStream(videoFile));
+            // Uploads go ahead of the clip downloads sharing the bandwidth budget
+            InputStreamContent mediaContent = new InputStreamContent(VIDEO_FILE_FORMAT, bandwidthScheduler.throttle(
+                    new FileInputStream(videoFile), broadcasterId, BandwidthPriorityEnum.UPLOAD));
             mediaContent.setLength(videoFile.length());
 
             // Insert the video:
@@ -167,6 +162,33 @@ public class YoutubeUploaderLogic {
                 }
             }
         }
+        return returnedVideo != null;
+    }
+
+    /**
+     * Returns the shared YouTube client, authorizing it on first use.
+     *
+     * @return The YouTube Data API client
+     * @throws IOException if the authorization fails
+     */
+    private static synchronized YouTube getYoutube() throws IOException {
+        if (youtube == null) {
+            // This OAuth 2.0 access scope allows an application to upload files
+            // to the authenticated user's YouTube channel.
+            List<String> scopes = Lists.newArrayList("https://www.googleapis.com/auth/youtube.upload");
+
+            // Authorize the request.
+            Credential credential = YoutubeAuth.authorize(scopes, "uploadvideo");
+            log.info("OAuth 2.0 authorization successful. Access token expiry time: {}", credential.getExpirationTimeMilliseconds());
+
+            // This object is used to make YouTube Data API requests.
+            youtube = new YouTube.Builder(
+                    YoutubeAuth.HTTP_TRANSPORT,
+                    YoutubeAuth.JSON_FACTORY,
+                    credential).setApplicationName("clipfarmer")
+                    .build();
+        }
+        return youtube;
     }
 
     private static Video getMetadata(String youtubeTitle, String youtubeDescription, String broadcasterId) {
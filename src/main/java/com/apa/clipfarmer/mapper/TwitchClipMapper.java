@@ -3,6 +3,7 @@ package com.apa.clipfarmer.mapper;
 import com.apa.clipfarmer.model.TwitchClip;
 import java.util.List;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 /**
  * MyBatis Mapper Interface for TwitchClip database operations.
@@ -18,6 +19,10 @@ public interface TwitchClipMapper {
 
     TwitchClip selectClipByClipId(String clipId);
 
+    List<TwitchClip> selectClipsByClipIds(@Param("clipIds") List<String> clipIds);
+
     void insertClip(TwitchClip clip);
 
+    void updateViewCount(@Param("clipId") String clipId, @Param("viewCount") int viewCount);
+
 }
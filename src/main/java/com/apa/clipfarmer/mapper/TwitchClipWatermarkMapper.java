@@ -0,0 +1,20 @@
+package com.apa.clipfarmer.mapper;
+
+import com.apa.clipfarmer.model.TwitchClipWatermark;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * Interface for TwitchClipWatermark data access operations.
+ *
+ * @author alexpages
+ */
+@Mapper
+public interface TwitchClipWatermarkMapper {
+
+    TwitchClipWatermark selectByBroadcasterId(@Param("broadcasterId") String broadcasterId);
+
+    void insertWatermark(TwitchClipWatermark twitchClipWatermark);
+
+    void updateWatermark(TwitchClipWatermark twitchClipWatermark);
+}
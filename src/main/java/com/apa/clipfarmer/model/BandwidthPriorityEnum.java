@@ -0,0 +1,12 @@
+package com.apa.clipfarmer.model;
+
+/**
+ * Enum for the priorities of the transfers sharing the bandwidth budget, from highest to lowest
+ *
+ * @author alexpages
+ */
+public enum BandwidthPriorityEnum {
+
+    UPLOAD,
+    DOWNLOAD
+}
@@ -2,6 +2,8 @@ package com.apa.clipfarmer.model;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
+import java.util.Arrays;
+import java.util.List;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -13,7 +15,10 @@ import lombok.Setter;
 @Getter
 public final class ClipFarmerArgs {
 
-    private TwitchStreamerNameEnum twitchStreamerNameEnum;
+    private static final String ALL_STREAMERS = "all";
+
+    private List<TwitchStreamerNameEnum> twitchStreamerNameEnums;
+    private boolean daemon;
 
     /**
      * Class to build ClipFarmerArgs
@@ -24,9 +29,18 @@ public final class ClipFarmerArgs {
     @Parameters(separators = "=")
     public static class Builder {
 
+        /**
+         * A single streamer, a comma-separated list of streamers, or "all".
+         */
         @Parameter(names = "streamerName", required = true)
         private String streamerName;
 
+        /**
+         * Keeps the application running and processes the streamers on their schedule.
+         */
+        @Parameter(names = "daemon", arity = 1)
+        private boolean daemon;
+
         /**
          * Parses the args into a variable to be used.
          *
@@ -34,7 +48,18 @@ public final class ClipFarmerArgs {
          */
         public ClipFarmerArgs build() {
             ClipFarmerArgs clipFarmerArgs = new ClipFarmerArgs();
-            clipFarmerArgs.twitchStreamerNameEnum = TwitchStreamerNameEnum.fromString(this.streamerName);
+            if (ALL_STREAMERS.equalsIgnoreCase(this.streamerName)) {
+                clipFarmerArgs.twitchStreamerNameEnums = Arrays.stream(TwitchStreamerNameEnum.values())
+                        .filter(twitchStreamer -> !TwitchStreamerNameEnum.INVALID.equals(twitchStreamer))
+                        .toList();
+            } else {
+                clipFarmerArgs.twitchStreamerNameEnums = Arrays.stream(this.streamerName.split(","))
+                        .map(String::trim)
+                        .map(TwitchStreamerNameEnum::fromString)
+                        .distinct()
+                        .toList();
+            }
+            clipFarmerArgs.daemon = this.daemon;
             return clipFarmerArgs;
         }
     }
@@ -0,0 +1,18 @@
+package com.apa.clipfarmer.model;
+
+import java.util.List;
+import lombok.Data;
+
+/**
+ * Class that represents the clips fetched for a broadcaster, with the time window they were fetched from
+ *
+ * @author alexpages
+ */
+@Data
+public class ClipFetchResult {
+
+    private final String broadcasterId;
+    private final ClipFetchWindow window;
+    private final List<TwitchClip> twitchClips;
+
+}
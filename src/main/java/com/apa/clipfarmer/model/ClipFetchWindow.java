@@ -0,0 +1,22 @@
+package com.apa.clipfarmer.model;
+
+import java.time.Instant;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Class that represents the time window of a clip fetch
+ *
+ * @author alexpages
+ */
+@Data
+@RequiredArgsConstructor
+@NoArgsConstructor(force = true)
+public class ClipFetchWindow {
+
+    private final Instant startedAt;
+    private final Instant endedAt;
+    private final boolean fullScan;
+
+}
@@ -0,0 +1,26 @@
+package com.apa.clipfarmer.model;
+
+/**
+ * Enum for the stages recorded in the run journal, in the order they are completed
+ *
+ * @author alexpages
+ */
+public enum ClipJournalStageEnum {
+
+    FETCHED,
+    RESOLVED,
+    DOWNLOADED,
+    ENCODED,
+    CONCATENATED,
+    UPLOADED;
+
+    /**
+     * Returns whether this stage has been completed once the given stage is reached.
+     *
+     * @param stage The stage to compare with
+     * @return true if this stage is the given stage or a later one
+     */
+    public boolean isAtLeast(ClipJournalStageEnum stage) {
+        return this.ordinal() >= stage.ordinal();
+    }
+}
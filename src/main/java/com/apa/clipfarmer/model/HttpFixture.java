@@ -0,0 +1,20 @@
+package com.apa.clipfarmer.model;
+
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+
+/**
+ * Class that represents a recorded HTTP exchange, stored on disk to be replayed
+ *
+ * @author alexpages
+ */
+@Data
+public class HttpFixture {
+
+    private String request; // method and normalized URI, without secrets
+    private int status;
+    private Map<String, List<String>> headers;
+    private String body;
+
+}
@@ -0,0 +1,13 @@
+package com.apa.clipfarmer.model;
+
+/**
+ * Enum for the record/replay modes of the Twitch API traffic
+ *
+ * @author alexpages
+ */
+public enum HttpReplayModeEnum {
+
+    OFF,
+    RECORD,
+    REPLAY
+}
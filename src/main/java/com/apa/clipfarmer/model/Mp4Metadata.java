@@ -0,0 +1,21 @@
+package com.apa.clipfarmer.model;
+
+import lombok.Data;
+
+/**
+ * Class that represents the metadata read from the boxes of an MP4 file
+ *
+ * @author alexpages
+ */
+@Data
+public class Mp4Metadata {
+
+    private double durationSeconds;
+    private String videoCodec;
+    private String audioCodec;
+    private int width;
+    private int height;
+    private double frameRate;
+    private boolean truncated; // a box extends past the end of the file, or the media data is missing
+
+}
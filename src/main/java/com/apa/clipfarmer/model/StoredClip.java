@@ -0,0 +1,17 @@
+package com.apa.clipfarmer.model;
+
+import lombok.Data;
+
+/**
+ * Class that represents a clip file kept in the persistent clip store
+ *
+ * @author alexpages
+ */
+@Data
+public class StoredClip {
+
+    private String clipId;
+    private long sizeBytes;
+    private long lastAccessedAt; // epoch millis
+
+}
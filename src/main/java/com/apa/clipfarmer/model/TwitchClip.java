@@ -3,6 +3,7 @@ package com.apa.clipfarmer.model;
 import java.time.LocalDateTime;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 /**
  * Class that represents the TwitchClip model
@@ -11,6 +12,7 @@ import lombok.Data;
  */
 @Data
 @AllArgsConstructor
+@NoArgsConstructor
 public class TwitchClip {
 
     private Long id;
@@ -0,0 +1,18 @@
+package com.apa.clipfarmer.model;
+
+import java.time.LocalDateTime;
+import lombok.Data;
+
+/**
+ * Class that represents the TwitchClipWatermark model, the point up to which the clips of a broadcaster were fetched
+ *
+ * @author alexpages
+ */
+@Data
+public class TwitchClipWatermark {
+
+    private String broadcasterId;
+    private LocalDateTime fetchedUntil; // end of the last fetched window, in UTC
+    private LocalDateTime lastFullScanAt; // end of the last window fetched over the whole look-back period, in UTC
+
+}
@@ -0,0 +1,27 @@
+package com.apa.clipfarmer.model;
+
+import java.time.Duration;
+import java.time.Instant;
+import lombok.Data;
+
+/**
+ * Class that represents a Twitch app access token and its expiry
+ *
+ * @author alexpages
+ */
+@Data
+public class TwitchOAuthToken {
+
+    private final String accessToken;
+    private final Instant expiresAt;
+
+    /**
+     * Checks whether the token expires within the given margin.
+     *
+     * @param margin The margin before expiry.
+     * @return true if the token is expired or expires within the margin
+     */
+    public boolean expiresWithin(Duration margin) {
+        return !Instant.now().plus(margin).isBefore(expiresAt);
+    }
+}
@@ -0,0 +1,12 @@
+package com.apa.clipfarmer.model;
+
+/**
+ * Enum for the ways the highlight video is built from the downloaded clips
+ *
+ * @author alexpages
+ */
+public enum VideoModeEnum {
+
+    SEGMENTED, // every clip is encoded with fades, then the encoded clips are concatenated
+    SINGLE_PASS // one ffmpeg process decodes every clip and encodes the video with crossfades
+}
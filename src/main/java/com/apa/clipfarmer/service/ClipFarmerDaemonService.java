@@ -0,0 +1,108 @@
+package com.apa.clipfarmer.service;
+
+import com.apa.clipfarmer.model.TwitchStreamerNameEnum;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service that keeps the application resident and runs the batch process of every streamer on its own cron schedule.
+ * The warmed JVM, connection pools and caches are reused between runs, and runs of the same streamer never overlap.
+ *
+ * @author alexpages
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ClipFarmerDaemonService {
+
+    private static final String CRON_PROPERTY = "clipfarmer.daemon.cron";
+    private static final String DEFAULT_CRON = "0 0 6 * * *";
+
+    private final Environment environment;
+    private final Map<TwitchStreamerNameEnum, ReentrantLock> streamerLocks = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Schedules the given streamers. The cadence of a streamer is read from clipfarmer.daemon.cron.{streamerName},
+     * falling back to clipfarmer.daemon.cron.
+     *
+     * @param twitchStreamers The streamers to schedule.
+     * @param job             The batch process to run for a streamer.
+     */
+    public void start(List<TwitchStreamerNameEnum> twitchStreamers, Consumer<TwitchStreamerNameEnum> job) {
+        String defaultCron = environment.getProperty(CRON_PROPERTY, DEFAULT_CRON);
+        for (TwitchStreamerNameEnum twitchStreamer : twitchStreamers) {
+            String cron = environment.getProperty(CRON_PROPERTY + "." + twitchStreamer.getName(), defaultCron);
+            scheduleNext(twitchStreamer, CronExpression.parse(cron), job);
+        }
+        log.info("ClipFarmer daemon started for {} streamers", twitchStreamers.size());
+    }
+
+    /**
+     * Schedules the next run of a streamer according to its cron expression.
+     *
+     * @param twitchStreamer The streamer to schedule.
+     * @param cron           The cadence of the streamer.
+     * @param job            The batch process to run for the streamer.
+     */
+    private void scheduleNext(TwitchStreamerNameEnum twitchStreamer, CronExpression cron, Consumer<TwitchStreamerNameEnum> job) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = cron.next(now);
+        if (next == null) {
+            log.warn("No upcoming run for streamer {}, it will not be scheduled again", twitchStreamer.getName());
+            return;
+        }
+        log.info("Next run for streamer {} scheduled at {}", twitchStreamer.getName(), next);
+        scheduler.schedule(() -> {
+            scheduleNext(twitchStreamer, cron, job);
+            Thread.ofVirtual().name("clipfarmer-" + twitchStreamer.getName()).start(() -> runExclusively(twitchStreamer, job));
+        }, Duration.between(now, next).toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the batch process of a streamer unless a previous run of the same streamer is still in progress.
+     *
+     * @param twitchStreamer The streamer to process.
+     * @param job            The batch process to run.
+     */
+    private void runExclusively(TwitchStreamerNameEnum twitchStreamer, Consumer<TwitchStreamerNameEnum> job) {
+        ReentrantLock lock = streamerLocks.computeIfAbsent(twitchStreamer, key -> new ReentrantLock());
+        if (!lock.tryLock()) {
+            log.warn("Previous run for streamer {} is still in progress, skipping this run", twitchStreamer.getName());
+            return;
+        }
+        try {
+            job.accept(twitchStreamer);
+        } catch (Exception e) {
+            log.error("Scheduled run failed for streamer {}", twitchStreamer.getName(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops scheduling new runs when the application shuts down.
+     */
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        log.info("ClipFarmer daemon stopped");
+    }
+}
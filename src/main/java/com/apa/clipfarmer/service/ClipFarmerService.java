@@ -1,32 +1,30 @@
 package com.apa.clipfarmer.service;
 
 import com.apa.clipfarmer.logic.EmailNotificationLogic;
+import com.apa.clipfarmer.logic.pipeline.ClipPipelineLogic;
+import com.apa.clipfarmer.logic.pipeline.RunJournalLogic;
 import com.apa.clipfarmer.logic.twitch.TwitchAuthLogic;
-import com.apa.clipfarmer.logic.twitch.TwitchClipDownloader;
-import com.apa.clipfarmer.logic.twitch.TwitchClipFetcherLogic;
-import com.apa.clipfarmer.logic.video.VideoLogic;
+import com.apa.clipfarmer.logic.twitch.TwitchClipStore;
 import com.apa.clipfarmer.logic.youtube.YoutubeUploaderLogic;
-import com.apa.clipfarmer.mapper.TwitchClipMapper;
 import com.apa.clipfarmer.model.ClipFarmerArgs;
-import com.apa.clipfarmer.model.TwitchClip;
 import com.apa.clipfarmer.model.TwitchStreamerNameEnum;
 import com.apa.clipfarmer.utils.FileUtils;
 import com.apa.clipfarmer.utils.YoutubeUtils;
 import com.beust.jcommander.JCommander;
+import jakarta.annotation.PostConstruct;
 import java.nio.file.Paths;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.ibatis.session.SqlSession;
-import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
-
-import java.util.List;
-
 /**
- * Service that accepts a Twitch streamer through the command line as a parameter.
+ * Service that accepts one or more Twitch streamers through the command line as a parameter.
  * This service fetches clips, downloads them, and uploads them to a YouTube channel.
  *
  * @author alexpages
@@ -36,82 +34,176 @@ import java.util.List;
 @Slf4j
 public class ClipFarmerService {
 
-    private final TwitchClipFetcherLogic twitchClipFetcherLogic;
-    private final TwitchClipDownloader twitchClipDownloader;
-    private final SqlSessionFactory sqlSessionFactory;
-    private final VideoLogic videoLogic;
+    private final ClipPipelineLogic clipPipelineLogic;
+    private final ClipFarmerDaemonService clipFarmerDaemonService;
+    private final RunJournalLogic runJournalLogic;
+    private final TwitchAuthLogic twitchAuthLogic;
+    private final TwitchClipStore twitchClipStore;
+    @Lazy
     private final EmailNotificationLogic emailNotificationLogic;
+    @Lazy
     private final YoutubeUtils youtubeUtils;
+    @Lazy
     private final YoutubeUploaderLogic youtubeUploaderLogic;
 
-    private static final int CLIP_DURATION = 10;
-    private static final int MIN_VIEWS = 400;
-    private static final int DAYS_AGO = 5;
-
-    private static final String DOWNLOAD_DIRECTORY = "build/downloads/";
     private static final String OUTPUT_DIRECTORY = "build/output/";
     private static final String MERGED_VIDEO_FILENAME = "_merged_video.mp4";
 
     /**
-     * Execute main batch process.
+     * Maximum number of streamers processed at the same time.
+     */
+    @Value("${clipfarmer.streamers.concurrency:2}")
+    private int streamerConcurrency;
+
+    private Semaphore streamerPermits;
+
+    /**
+     * Creates the streamer budget shared by batch and daemon runs.
+     */
+    @PostConstruct
+    void initStreamerBudget() {
+        streamerPermits = new Semaphore(Math.max(1, streamerConcurrency));
+    }
+
+    /**
+     * Execute main batch process for every streamer passed as argument.
+     * Streamers run concurrently and share the cached OAuth token, while their files and failures are kept apart.
+     * In daemon mode the streamers are scheduled instead, and the application keeps running between runs.
      *
      * @param args Command-line arguments
      */
     public void execute(String[] args) {
-        long startTime = System.currentTimeMillis();
-
-        // Get streamer name
+        // Get streamer names
         ClipFarmerArgs clipFarmerArgs = parseArguments(args);
         if (clipFarmerArgs == null) return;
-        TwitchStreamerNameEnum twitchStreamer = clipFarmerArgs.getTwitchStreamerNameEnum();
-        if (TwitchStreamerNameEnum.INVALID.equals(twitchStreamer)) {
-            log.warn("Twitch streamer is not present in list or was null");
+        List<TwitchStreamerNameEnum> twitchStreamers = clipFarmerArgs.getTwitchStreamerNameEnums().stream()
+                .filter(twitchStreamer -> !TwitchStreamerNameEnum.INVALID.equals(twitchStreamer))
+                .toList();
+        if (twitchStreamers.size() != clipFarmerArgs.getTwitchStreamerNameEnums().size()) {
+            log.warn("Some Twitch streamers are not present in list or were null");
+        }
+        if (twitchStreamers.isEmpty()) {
+            log.warn("No valid Twitch streamer to process");
             return;
         }
 
-        // Get clips and download them
-        String twitchOAuthToken = retrieveTwitchOAuthToken();
-        if (twitchOAuthToken == null) return;
-
-        Map<String, Double> clipDurationsMap = new LinkedHashMap<>();
-        try (SqlSession session = sqlSessionFactory.openSession()) {
-            List<TwitchClip> twitchClips = twitchClipFetcherLogic.getTwitchClips(
-                    twitchStreamer.getName(), twitchOAuthToken, CLIP_DURATION, MIN_VIEWS, DAYS_AGO);
-            log.info("Total amount of clips retrieved for broadcasterId [{}] is: [{}]", twitchStreamer.getName(), twitchClips.size());
-            TwitchClipMapper mapper = session.getMapper(TwitchClipMapper.class);
-
-            for (TwitchClip clip : twitchClips) {
-                String clipFilePath = DOWNLOAD_DIRECTORY + twitchStreamer.getName() + "/" + clip.getClipId() + ".mp4";
-                double duration = processClip(clip, mapper, session, twitchStreamer);
-                if (duration != 0.0) {
-                    clipDurationsMap.put(clipFilePath, duration);
-                }
+        if (clipFarmerArgs.isDaemon()) {
+            clipFarmerDaemonService.start(twitchStreamers, this::processScheduledStreamer);
+            return;
+        }
+
+        if (!hasTwitchOAuthToken()) return;
+
+        log.info("Processing {} streamers with up to {} at a time: {}", twitchStreamers.size(), streamerConcurrency, twitchStreamers);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (TwitchStreamerNameEnum twitchStreamer : twitchStreamers) {
+                executor.submit(() -> runStreamer(twitchStreamer));
             }
+        }
+    }
+
+    /**
+     * Runs a scheduled batch process for a streamer, used by the daemon mode.
+     *
+     * @param twitchStreamer The streamer to process.
+     */
+    private void processScheduledStreamer(TwitchStreamerNameEnum twitchStreamer) {
+        if (!hasTwitchOAuthToken()) return;
+        runStreamer(twitchStreamer);
+    }
+
+    /**
+     * Runs the batch process for a streamer once a streamer permit is available, isolating its failures.
+     *
+     * @param twitchStreamer The streamer to process.
+     */
+    private void runStreamer(TwitchStreamerNameEnum twitchStreamer) {
+        try {
+            streamerPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted before processing streamer {}", twitchStreamer.getName());
+            return;
+        }
+        try {
+            processStreamer(twitchStreamer);
         } catch (Exception e) {
-            log.error("Unexpected error during execution", e);
+            log.error("Batch process failed for streamer {}", twitchStreamer.getName(), e);
+        } finally {
+            streamerPermits.release();
         }
+    }
 
-        // Create summary videos after previous download
-        String fileName = MERGED_VIDEO_FILENAME;
-        String outputFileName = OUTPUT_DIRECTORY + twitchStreamer.getName() + fileName;
+    /**
+     * Execute main batch process for a single streamer.
+     * The clips pinned in the clip store by the run are released whatever its outcome.
+     *
+     * @param twitchStreamer The streamer to process.
+     */
+    public void processStreamer(TwitchStreamerNameEnum twitchStreamer) {
+        try {
+            processStreamerRun(twitchStreamer);
+        } finally {
+            twitchClipStore.release(twitchStreamer.getName());
+        }
+    }
+
+    private void processStreamerRun(TwitchStreamerNameEnum twitchStreamer) {
+        long startTime = System.currentTimeMillis();
 
-        // Process videos
-        String pathVideoCreated = videoLogic.concatenateVideos(clipDurationsMap, outputFileName);
+        // Create summary video while clips are fetched, downloaded and processed
+        String fileName = MERGED_VIDEO_FILENAME;
+        String outputFileName = OUTPUT_DIRECTORY + twitchStreamer.getName() + "/" + twitchStreamer.getName() + fileName;
+        String pathVideoCreated = null;
+        try {
+            pathVideoCreated = clipPipelineLogic.run(twitchStreamer, outputFileName);
+        } catch (Exception e) {
+            log.error("Unexpected error during execution for streamer {}", twitchStreamer.getName(), e);
+        }
         log.info("pathVideoCreated is: {}", pathVideoCreated);
 
+        // Journaled clips are kept so the next run can resume them
+        if (pathVideoCreated == null) {
+            log.warn("No highlight video created for streamer {}, skipping upload.", twitchStreamer.getName());
+            return;
+        }
+
         // Upload video
         String youtubeDescription = youtubeUtils.createVideoDescription(twitchStreamer.getName());
         String yotubeTitle = youtubeUtils.createVideoTitle(twitchStreamer.getName(), fileName, true);
-        youtubeUploaderLogic.uploadHighlightVideo(yotubeTitle, youtubeDescription, pathVideoCreated, twitchStreamer.getName());
+        boolean uploaded = youtubeUploaderLogic.uploadHighlightVideo(
+                yotubeTitle, youtubeDescription, pathVideoCreated, twitchStreamer.getName());
+        // Journal the upload before anything else can fail, the video must never be uploaded twice
+        boolean committed = uploaded && clipPipelineLogic.recordUploaded(twitchStreamer);
 
         // Send email notification
         long elapsedTime = (System.currentTimeMillis() - startTime) / 1000;
-        log.info("Batch execution took {} seconds", elapsedTime);
+        log.info("Batch execution for {} took {} seconds", twitchStreamer.getName(), elapsedTime);
         emailNotificationLogic.sendEmail("Execution finalized", twitchStreamer.getName(), elapsedTime);
 
-        // Clean up
-        FileUtils.deleteDirectory(Paths.get("build/output"));
-        FileUtils.deleteDirectory(Paths.get("build/downloads"));
+        // Keep the merged video and the journal so the next run can retry the upload
+        if (!uploaded) {
+            log.warn("Upload failed for streamer {}, keeping files to resume on next run.", twitchStreamer.getName());
+            return;
+        }
+        cleanUp(twitchStreamer, committed);
+    }
+
+    /**
+     * Deletes the working directory and, once the uploaded run is committed, the run journal of a streamer.
+     * The journal of a run that is not committed is kept so the next run retries the commit.
+     * Downloaded clips stay in the clip store so a later run or re-render can reuse them.
+     *
+     * @param twitchStreamer The streamer whose files are deleted.
+     * @param committed      Whether the uploaded run has been committed.
+     */
+    private void cleanUp(TwitchStreamerNameEnum twitchStreamer, boolean committed) {
+        FileUtils.deleteDirectory(Paths.get(OUTPUT_DIRECTORY, twitchStreamer.getName()));
+        if (committed) {
+            runJournalLogic.delete(twitchStreamer.getName());
+        } else {
+            log.warn("Uploaded run of {} is not committed, keeping its journal to retry on next run.", twitchStreamer.getName());
+        }
     }
 
     /**
@@ -132,42 +224,20 @@ public class ClipFarmerService {
     }
 
     /**
-     * Retrieves the Twitch OAuth token.
+     * Checks that a Twitch OAuth token can be retrieved before any streamer is processed.
+     * The token is not handed to the runs: every Twitch request reads it from {@link TwitchAuthLogic}, so a token
+     * that expires during a long run is refreshed instead of failing the remaining requests.
      *
-     * @return OAuth token as a String, or null if retrieval fails.
+     * @return true if the token was retrieved
      */
-    private String retrieveTwitchOAuthToken() {
+    private boolean hasTwitchOAuthToken() {
         try {
-            String token = TwitchAuthLogic.getOAuthToken();
-            log.info("OAuth token has been retrieved: [{}]", token);
-            return token;
+            twitchAuthLogic.getOAuthToken();
+            log.info("OAuth token has been retrieved");
+            return true;
         } catch (Exception e) {
             log.error("Failed to retrieve OAuth token", e);
-            return null;
-        }
-    }
-
-    /**
-     * Processes a single Twitch clip by checking its existence, downloading it, and inserting it into the database.
-     *
-     * @param twitchClip The clip to process.
-     * @param mapper     The TwitchClipMapper instance.
-     * @param session    The SQL session.
-     */
-    private double processClip(TwitchClip twitchClip, TwitchClipMapper mapper, SqlSession session, TwitchStreamerNameEnum twitchStreamer) {
-        try {
-            if (mapper.selectClipByClipId(twitchClip.getClipId()) != null) {
-                log.info("Clip {} already exists in DB, skipping.", twitchClip.getClipId());
-                return 0.0;
-            }
-            twitchClipDownloader.downloadFile(twitchClip.getUrl(), twitchClip, twitchStreamer);
-            mapper.insertClip(twitchClip);
-            session.commit();
-            log.info("Inserted new clip {} into the database.", twitchClip.getClipId());
-            return (double) twitchClip.getDuration();
-        } catch (Exception e) {
-            log.error("Error processing clip {}: {}", twitchClip.getClipId(), e.getMessage(), e);
-            return 0;
+            return false;
         }
     }
 }
@@ -0,0 +1,49 @@
+package com.apa.clipfarmer.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of large direct buffers reused across I/O operations.
+ * Direct buffers are expensive to allocate and are only reclaimed by the garbage collector, so they are kept
+ * and handed out again instead of allocated per operation.
+ *
+ * @author alexpages
+ */
+public class DirectBufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param bufferSize Size of every buffer, in bytes.
+     * @param maxPooled  Maximum number of idle buffers kept in the pool.
+     */
+    public DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = Math.max(4096, bufferSize);
+        this.buffers = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, allocating one if the pool is empty.
+     *
+     * @return A buffer ready to be written into
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers beyond the pool capacity are left to the garbage collector.
+     *
+     * @param buffer The buffer to return.
+     */
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,100 @@
+package com.apa.clipfarmer.utils;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Thread-safe in-memory cache bounded by size and by time to live.
+ * When the cache is full the least recently used entry is evicted, and entries older than the time to live are
+ * discarded on access.
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the values
+ * @author alexpages
+ */
+public class ExpiringLruCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxSize Maximum number of entries.
+     * @param ttl     Time an entry stays valid after being stored.
+     */
+    public ExpiringLruCache(int maxSize, Duration ttl) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > ExpiringLruCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value of a key.
+     *
+     * @param key The key.
+     * @return The value, or empty if it is not cached or has expired
+     */
+    public synchronized Optional<V> get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (System.nanoTime() - entry.storedAt >= ttlNanos) {
+            entries.remove(key);
+            return Optional.empty();
+        }
+        return Optional.of(entry.value);
+    }
+
+    /**
+     * Returns the cached value of a key, loading and caching it on a miss.
+     * The loader runs outside the cache lock, and a null result is not cached.
+     *
+     * @param key    The key.
+     * @param loader Function that loads the value of the key.
+     * @return The value, or empty if the loader found none
+     */
+    public Optional<V> getOrLoad(K key, Function<K, V> loader) {
+        Optional<V> cached = get(key);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        V value = loader.apply(key);
+        if (value != null) {
+            put(key, value);
+        }
+        return Optional.ofNullable(value);
+    }
+
+    /**
+     * Stores the value of a key.
+     *
+     * @param key   The key.
+     * @param value The value.
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new CacheEntry<>(value, System.nanoTime()));
+    }
+
+    /**
+     * Removes the value of a key.
+     *
+     * @param key The key.
+     */
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    private record CacheEntry<V>(V value, long storedAt) {
+    }
+}
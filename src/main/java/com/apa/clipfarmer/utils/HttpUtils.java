@@ -1,7 +1,10 @@
 package com.apa.clipfarmer.utils;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 
@@ -9,6 +12,19 @@ import lombok.extern.slf4j.Slf4j;
 @UtilityClass
 public class HttpUtils {
 
+    /**
+     * Shared Jackson mapper for Twitch responses. It is thread-safe once configured, so it is created once
+     * instead of per response.
+     */
+    public static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    /**
+     * Factory of the shared mapper, used to stream large responses token by token.
+     */
+    public static final JsonFactory JSON_FACTORY = OBJECT_MAPPER.getFactory();
+
     /**
      * Helper method to parse a JSON response into a map.
      *
@@ -16,11 +32,10 @@ public class HttpUtils {
      * @return Map with parsed data
      */
     public static JsonNode parseJsonResponse(String jsonResponse) {
-        ObjectMapper objectMapper = new ObjectMapper();
         try {
-            return objectMapper.readTree(jsonResponse);
+            return OBJECT_MAPPER.readTree(jsonResponse);
         } catch (Exception e) {
-            System.err.println("Error parsing JSON response: " + e.getMessage());
+            log.error("Error parsing JSON response: {}", e.getMessage());
             throw new RuntimeException("Failed to parse JSON response.", e);
         }
     }
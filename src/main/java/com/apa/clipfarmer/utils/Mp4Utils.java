@@ -0,0 +1,251 @@
+package com.apa.clipfarmer.utils;
+
+import com.apa.clipfarmer.model.Mp4Metadata;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Utils class that reads the metadata of MP4 files straight from their boxes, without spawning ffprobe.
+ * Only the box headers of the file are read, and the moov box is memory-mapped, so a probe costs a few reads
+ * regardless of the size of the media data.
+ *
+ * @author alexpages
+ */
+@Slf4j
+@UtilityClass
+public class Mp4Utils {
+
+    private static final int BOX_HEADER_SIZE = 8;
+    private static final int LARGE_BOX_HEADER_SIZE = 16;
+
+    /**
+     * Reads the duration, codecs, resolution and frame rate of an MP4 file, and whether it is truncated.
+     *
+     * @param path The path of the MP4 file.
+     * @return The metadata of the file, or empty if it is not a readable MP4 file
+     */
+    public static Optional<Mp4Metadata> probe(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Mp4Metadata metadata = new Mp4Metadata();
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(LARGE_BOX_HEADER_SIZE);
+            long moovPosition = -1;
+            long moovSize = 0;
+            boolean hasMediaData = false;
+            long position = 0;
+            while (position < fileSize) {
+                if (!readFully(channel, header.clear().limit(BOX_HEADER_SIZE), position)) {
+                    metadata.setTruncated(true);
+                    break;
+                }
+                long size = Integer.toUnsignedLong(header.getInt(0));
+                String type = new String(header.array(), 4, 4, StandardCharsets.US_ASCII);
+                int headerSize = BOX_HEADER_SIZE;
+                if (size == 1) {
+                    if (!readFully(channel, header.limit(LARGE_BOX_HEADER_SIZE), position)) {
+                        metadata.setTruncated(true);
+                        break;
+                    }
+                    size = header.getLong(BOX_HEADER_SIZE);
+                    headerSize = LARGE_BOX_HEADER_SIZE;
+                } else if (size == 0) {
+                    size = fileSize - position;
+                }
+                if (size < headerSize) {
+                    log.warn("Invalid {} box at byte {} of {}", type, position, path);
+                    return Optional.empty();
+                }
+                if (position + size > fileSize) {
+                    metadata.setTruncated(true);
+                }
+                if ("moov".equals(type)) {
+                    moovPosition = position + headerSize;
+                    moovSize = Math.min(size, fileSize - position) - headerSize;
+                } else if ("mdat".equals(type)) {
+                    hasMediaData = true;
+                }
+                position += size;
+            }
+            if (!hasMediaData) {
+                metadata.setTruncated(true);
+            }
+            if (moovPosition < 0) {
+                log.warn("No moov box found in {}", path);
+                return Optional.empty();
+            }
+
+            parseMovie(channel.map(FileChannel.MapMode.READ_ONLY, moovPosition, moovSize), metadata);
+            return Optional.of(metadata);
+        } catch (IOException e) {
+            log.warn("Unable to read {}: {}", path, e.getMessage());
+            return Optional.empty();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            log.warn("Malformed moov box in {}", path);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Reads the movie header and the tracks of a moov box.
+     */
+    private static void parseMovie(ByteBuffer moov, Mp4Metadata metadata) {
+        double movieDuration = 0;
+        double longestTrackDuration = 0;
+        for (Box box : children(moov)) {
+            if ("mvhd".equals(box.type())) {
+                movieDuration = readDuration(box.content());
+            } else if ("trak".equals(box.type())) {
+                Track track = parseTrack(box.content());
+                longestTrackDuration = Math.max(longestTrackDuration, track.getDurationSeconds());
+                if ("vide".equals(track.handlerType) && metadata.getVideoCodec() == null) {
+                    metadata.setVideoCodec(track.codec);
+                    metadata.setWidth(track.width);
+                    metadata.setHeight(track.height);
+                    metadata.setFrameRate(track.getFrameRate());
+                } else if ("soun".equals(track.handlerType) && metadata.getAudioCodec() == null) {
+                    metadata.setAudioCodec(track.codec);
+                }
+            }
+        }
+        // Fragmented files leave the movie duration empty
+        metadata.setDurationSeconds(movieDuration > 0 ? movieDuration : longestTrackDuration);
+    }
+
+    /**
+     * Reads the header, handler, media header, sample description and sample timing of a trak box.
+     */
+    private static Track parseTrack(ByteBuffer trak) {
+        Track track = new Track();
+        for (Box box : children(trak)) {
+            if ("tkhd".equals(box.type())) {
+                ByteBuffer tkhd = box.content();
+                int dimensionsOffset = tkhd.get(0) == 1 ? 88 : 76;
+                track.width = tkhd.getInt(dimensionsOffset) >>> 16;
+                track.height = tkhd.getInt(dimensionsOffset + 4) >>> 16;
+            } else if ("mdia".equals(box.type())) {
+                parseMedia(box.content(), track);
+            }
+        }
+        return track;
+    }
+
+    private static void parseMedia(ByteBuffer mdia, Track track) {
+        for (Box box : children(mdia)) {
+            switch (box.type()) {
+                case "mdhd" -> {
+                    ByteBuffer mdhd = box.content();
+                    boolean version1 = mdhd.get(0) == 1;
+                    track.timescale = Integer.toUnsignedLong(mdhd.getInt(version1 ? 20 : 12));
+                    track.duration = version1 ? mdhd.getLong(24) : Integer.toUnsignedLong(mdhd.getInt(16));
+                }
+                case "hdlr" -> track.handlerType = readType(box.content(), 8);
+                case "minf" -> children(box.content()).stream()
+                        .filter(child -> "stbl".equals(child.type()))
+                        .findFirst()
+                        .ifPresent(stbl -> parseSampleTable(stbl.content(), track));
+                default -> {
+                }
+            }
+        }
+    }
+
+    private static void parseSampleTable(ByteBuffer stbl, Track track) {
+        for (Box box : children(stbl)) {
+            ByteBuffer content = box.content();
+            if ("stsd".equals(box.type()) && content.getInt(4) > 0) {
+                track.codec = readType(content, 12);
+            } else if ("stts".equals(box.type())) {
+                long entryCount = Integer.toUnsignedLong(content.getInt(4));
+                for (int i = 0; i < entryCount; i++) {
+                    long sampleCount = Integer.toUnsignedLong(content.getInt(8 + i * 8));
+                    long sampleDelta = Integer.toUnsignedLong(content.getInt(12 + i * 8));
+                    track.sampleCount += sampleCount;
+                    track.sampleDuration += sampleCount * sampleDelta;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the duration of an mvhd or mdhd box, which share the same layout up to the duration.
+     */
+    private static double readDuration(ByteBuffer header) {
+        boolean version1 = header.get(0) == 1;
+        long timescale = Integer.toUnsignedLong(header.getInt(version1 ? 20 : 12));
+        long duration = version1 ? header.getLong(24) : Integer.toUnsignedLong(header.getInt(16));
+        return timescale > 0 ? (double) duration / timescale : 0;
+    }
+
+    /**
+     * Splits the content of a container box into its child boxes, stopping at the first box that does not fit.
+     */
+    private static List<Box> children(ByteBuffer container) {
+        List<Box> boxes = new ArrayList<>();
+        int position = 0;
+        while (position + BOX_HEADER_SIZE <= container.limit()) {
+            long size = Integer.toUnsignedLong(container.getInt(position));
+            String type = readType(container, position + 4);
+            int headerSize = BOX_HEADER_SIZE;
+            if (size == 1) {
+                size = container.getLong(position + BOX_HEADER_SIZE);
+                headerSize = LARGE_BOX_HEADER_SIZE;
+            } else if (size == 0) {
+                size = container.limit() - position;
+            }
+            if (size < headerSize || position + size > container.limit()) {
+                break;
+            }
+            boxes.add(new Box(type, container.slice(position + headerSize, (int) size - headerSize)));
+            position += (int) size;
+        }
+        return boxes;
+    }
+
+    private static String readType(ByteBuffer buffer, int index) {
+        byte[] type = new byte[4];
+        buffer.get(index, type);
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record Box(String type, ByteBuffer content) {
+    }
+
+    private static final class Track {
+
+        private String handlerType;
+        private String codec;
+        private int width;
+        private int height;
+        private long timescale;
+        private long duration;
+        private long sampleCount;
+        private long sampleDuration;
+
+        private double getDurationSeconds() {
+            return timescale > 0 ? (double) duration / timescale : 0;
+        }
+
+        private double getFrameRate() {
+            return sampleDuration > 0 ? (double) sampleCount * timescale / sampleDuration : 0;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.apa.clipfarmer.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Utils class to track how long the application takes to reach each startup phase
+ *
+ * @author alexpages
+ */
+@Slf4j
+@UtilityClass
+public class StartupTimingUtils {
+
+    private static final Map<String, Long> PHASES = new ConcurrentHashMap<>();
+
+    /**
+     * Records the first time a startup phase is reached, in milliseconds since the JVM started.
+     * Later calls for the same phase are ignored.
+     *
+     * @param phase Name of the phase
+     */
+    public static void markOnce(String phase) {
+        if (PHASES.containsKey(phase)) {
+            return;
+        }
+        long elapsedMillis = getMillisSinceJvmStart();
+        if (PHASES.putIfAbsent(phase, elapsedMillis) == null) {
+            log.info("Startup phase [{}] reached after {} ms", phase, elapsedMillis);
+        }
+    }
+
+    /**
+     * Returns the time elapsed since the JVM started.
+     *
+     * @return Milliseconds since the JVM started
+     */
+    public static long getMillisSinceJvmStart() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+}
@@ -1,7 +1,7 @@
 package com.apa.clipfarmer.utils;
 
+import com.apa.clipfarmer.logic.twitch.TwitchStreamerRegistry;
 import com.apa.clipfarmer.mapper.TwitchHighlightMapper;
-import com.apa.clipfarmer.mapper.TwitchStreamerMapper;
 import com.apa.clipfarmer.model.TwitchStreamer;
 import java.time.LocalDateTime;
 import java.time.format.TextStyle;
@@ -10,6 +10,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import static com.apa.clipfarmer.model.ClipFarmerConstants.CLIP_FARMER_CONTACT;
@@ -21,11 +22,13 @@ import static com.apa.clipfarmer.model.TwitchConstants.TWITCH_URL;
  * @author alexpages
  */
 @Service
+@Lazy
 @RequiredArgsConstructor
 @Slf4j
 public class YoutubeUtils {
 
     private final SqlSessionFactory sqlSessionFactory;
+    private final TwitchStreamerRegistry twitchStreamerRegistry;
 
     /**
      * Creates a YouTube video title based on the broadcaster's ID and Twitch clip details.
@@ -36,17 +39,12 @@ public class YoutubeUtils {
      * @throws IllegalStateException If the broadcaster cannot be found or an error occurs.
      */
     public String createVideoTitle(String broadcasterId, String title, Boolean isHighlight) {
-        try (SqlSession session = sqlSessionFactory.openSession()) {
-            TwitchStreamerMapper mapper = session.getMapper(TwitchStreamerMapper.class);
-            TwitchStreamer twitchStreamer = mapper.selectByTwitchStreamerName(broadcasterId);
-
-            if (twitchStreamer == null) {
-                throw new IllegalStateException("TwitchStreamer not found for broadcasterId: " + broadcasterId);
-            }
+        try {
+            TwitchStreamer twitchStreamer = twitchStreamerRegistry.getStreamer(broadcasterId)
+                    .orElseThrow(() -> new IllegalStateException("TwitchStreamer not found for broadcasterId: " + broadcasterId));
 
             if (isHighlight) {
-                TwitchHighlightMapper twitchHighlightMapper = session.getMapper(TwitchHighlightMapper.class);
-                Integer lastId = twitchHighlightMapper.getLastHighlightIdByCreatorName(broadcasterId);
+                Integer lastId = getLastHighlightId(broadcasterId);
                 lastId = (lastId == null) ? 1 : lastId + 1;
                 String month = LocalDateTime.now().getMonth().getDisplayName(TextStyle.SHORT, Locale.ENGLISH).toUpperCase();
                 return String.format("%s HIGHLIGHTS TWITCH %s #%s",
@@ -72,13 +70,9 @@ public class YoutubeUtils {
      * @throws IllegalStateException If the broadcaster cannot be found or an error occurs.
      */
     public String createVideoDescription(String broadcasterId) {
-        try (SqlSession session = sqlSessionFactory.openSession()) {
-            TwitchStreamerMapper mapper = session.getMapper(TwitchStreamerMapper.class);
-            TwitchStreamer twitchStreamer = mapper.selectByTwitchStreamerName(broadcasterId);
-
-            if (twitchStreamer == null) {
-                throw new IllegalStateException("TwitchStreamer not found for broadcasterId: " + broadcasterId);
-            }
+        try {
+            TwitchStreamer twitchStreamer = twitchStreamerRegistry.getStreamer(broadcasterId)
+                    .orElseThrow(() -> new IllegalStateException("TwitchStreamer not found for broadcasterId: " + broadcasterId));
 
             return String.format("""
                 This is a compilation of the most viewed clips from %s from %s.
@@ -102,4 +96,16 @@ public class YoutubeUtils {
             throw new IllegalStateException("Failed to create video description due to an internal error.", e);
         }
     }
+
+    /**
+     * Retrieves the id of the last highlight uploaded for a streamer.
+     *
+     * @param creatorName The name of the streamer.
+     * @return The id of the last highlight, or null if there is none.
+     */
+    private Integer getLastHighlightId(String creatorName) {
+        try (SqlSession session = sqlSessionFactory.openSession()) {
+            return session.getMapper(TwitchHighlightMapper.class).getLastHighlightIdByCreatorName(creatorName);
+        }
+    }
 }
@@ -2,6 +2,7 @@
 USE clipfarmer;
 
 -- Drop tables if they already exist (in reverse order to avoid constraint issues)
+DROP TABLE IF EXISTS twitch_clip_watermark;
 DROP TABLE IF EXISTS twitch_highlight;
 DROP TABLE IF EXISTS twitch_clip;
 DROP TABLE IF EXISTS twitch_streamer;
@@ -40,3 +41,12 @@ CREATE TABLE twitch_highlight (
     created_at DATETIME NOT NULL,
     PRIMARY KEY (id)
 );
+
+-- Create table for TwitchClipWatermark
+CREATE TABLE twitch_clip_watermark (
+    broadcaster_id VARCHAR(255) NOT NULL,
+    fetched_until DATETIME NOT NULL,
+    last_full_scan_at DATETIME NOT NULL,
+    PRIMARY KEY (broadcaster_id),
+    FOREIGN KEY (broadcaster_id) REFERENCES twitch_streamer(broadcaster_id) ON DELETE CASCADE
+);
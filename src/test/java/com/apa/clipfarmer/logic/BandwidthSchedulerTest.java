@@ -0,0 +1,114 @@
+package com.apa.clipfarmer.logic;
+
+import com.apa.clipfarmer.model.BandwidthPriorityEnum;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class BandwidthSchedulerTest {
+
+    private static final double MBPS = 0.8; // 100 000 bytes per second
+
+    @Test
+    void grantsEverythingWithoutABudget() throws InterruptedException {
+        BandwidthScheduler scheduler = new BandwidthScheduler(0);
+        List<String> grants = new CopyOnWriteArrayList<>();
+
+        Thread transfers = Thread.ofVirtual().start(() -> {
+            for (int i = 0; i < 10; i++) {
+                acquire(scheduler, "streamer", BandwidthPriorityEnum.DOWNLOAD, 100_000_000, grants);
+            }
+        });
+        transfers.join(5000);
+
+        assertFalse(transfers.isAlive());
+        assertEquals(10, grants.size());
+    }
+
+    @Test
+    void holdsTransfersUntilTheDebtIsRepaid() throws InterruptedException {
+        BandwidthScheduler scheduler = new BandwidthScheduler(MBPS);
+        // The full bucket covers the first transfer, the second one leaves a second of debt
+        scheduler.acquire("streamer", BandwidthPriorityEnum.DOWNLOAD, 100_000);
+        scheduler.acquire("streamer", BandwidthPriorityEnum.DOWNLOAD, 100_000);
+        List<String> grants = new CopyOnWriteArrayList<>();
+
+        Thread third = startAcquire(scheduler, "streamer", BandwidthPriorityEnum.DOWNLOAD, grants);
+        awaitWaiting(scheduler, 1);
+
+        assertEquals(List.of(), grants);
+        third.join(5000);
+        assertEquals(List.of("streamer"), grants);
+    }
+
+    @Test
+    void servesUploadsBeforeDownloads() throws InterruptedException {
+        BandwidthScheduler scheduler = indebted("backfill");
+        List<String> grants = new CopyOnWriteArrayList<>();
+
+        Thread download = startAcquire(scheduler, "backfill", BandwidthPriorityEnum.DOWNLOAD, grants);
+        awaitWaiting(scheduler, 1);
+        Thread upload = startAcquire(scheduler, "highlight", BandwidthPriorityEnum.UPLOAD, grants);
+        awaitWaiting(scheduler, 2);
+        download.join(5000);
+        upload.join(5000);
+
+        assertEquals(List.of("highlight", "backfill"), grants);
+    }
+
+    @Test
+    void alternatesOwnersOfTheSamePriorityByServedBytes() throws InterruptedException {
+        BandwidthScheduler scheduler = indebted("heavy");
+        List<String> grants = new CopyOnWriteArrayList<>();
+
+        Thread firstHeavy = startAcquire(scheduler, "heavy", BandwidthPriorityEnum.DOWNLOAD, grants);
+        awaitWaiting(scheduler, 1);
+        Thread secondHeavy = startAcquire(scheduler, "heavy", BandwidthPriorityEnum.DOWNLOAD, grants);
+        awaitWaiting(scheduler, 2);
+        Thread light = startAcquire(scheduler, "light", BandwidthPriorityEnum.DOWNLOAD, grants);
+        awaitWaiting(scheduler, 3);
+        firstHeavy.join(5000);
+        secondHeavy.join(5000);
+        light.join(5000);
+
+        // The light owner starts level with the heavy one, then overtakes its second transfer
+        assertEquals(List.of("heavy", "light", "heavy"), grants);
+    }
+
+    /**
+     * Creates a scheduler whose bucket owes a second of transfer, so the next transfers queue up behind the debt.
+     */
+    private static BandwidthScheduler indebted(String owner) throws InterruptedException {
+        BandwidthScheduler scheduler = new BandwidthScheduler(MBPS);
+        scheduler.acquire(owner, BandwidthPriorityEnum.DOWNLOAD, 200_000);
+        return scheduler;
+    }
+
+    /**
+     * Waits until the given number of transfers are queued in the scheduler.
+     */
+    private static void awaitWaiting(BandwidthScheduler scheduler, int count) throws InterruptedException {
+        for (int i = 0; i < 5000 && scheduler.getWaitingCount() < count; i++) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, scheduler.getWaitingCount());
+    }
+
+    private static Thread startAcquire(BandwidthScheduler scheduler, String owner, BandwidthPriorityEnum priority,
+                                       List<String> grants) {
+        return Thread.ofVirtual().start(() -> acquire(scheduler, owner, priority, 10_000, grants));
+    }
+
+    private static void acquire(BandwidthScheduler scheduler, String owner, BandwidthPriorityEnum priority, long bytes,
+                                List<String> grants) {
+        try {
+            scheduler.acquire(owner, priority, bytes);
+            grants.add(owner);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.apa.clipfarmer.logic.pipeline;
+
+import com.apa.clipfarmer.logic.twitch.TwitchClipDownloader;
+import com.apa.clipfarmer.logic.twitch.TwitchClipFetcherLogic;
+import com.apa.clipfarmer.logic.twitch.TwitchClipStore;
+import com.apa.clipfarmer.logic.twitch.TwitchClipWatermarkLogic;
+import com.apa.clipfarmer.logic.video.EncodeBudget;
+import com.apa.clipfarmer.logic.video.VideoLogic;
+import com.apa.clipfarmer.mapper.TwitchClipMapper;
+import com.apa.clipfarmer.model.ClipFetchResult;
+import com.apa.clipfarmer.model.ClipFetchWindow;
+import com.apa.clipfarmer.model.ClipJournalStageEnum;
+import com.apa.clipfarmer.model.TwitchClip;
+import com.apa.clipfarmer.model.TwitchStreamerNameEnum;
+import com.apa.clipfarmer.model.VideoModeEnum;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ClipPipelineLogicTest {
+
+    private static final TwitchStreamerNameEnum STREAMER = TwitchStreamerNameEnum.LACY;
+    private static final ClipFetchWindow WINDOW = new ClipFetchWindow(Instant.parse("2025-01-09T00:00:00Z"),
+            Instant.parse("2025-01-10T00:00:00Z"), false);
+
+    @Mock
+    private TwitchClipFetcherLogic twitchClipFetcherLogic;
+
+    @Mock
+    private TwitchClipDownloader twitchClipDownloader;
+
+    @Mock
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Mock
+    private SqlSession sqlSession;
+
+    @Mock
+    private TwitchClipMapper twitchClipMapper;
+
+    @Mock
+    private VideoLogic videoLogic;
+
+    @Mock
+    private TwitchClipStore twitchClipStore;
+
+    @Mock
+    private TwitchClipWatermarkLogic twitchClipWatermarkLogic;
+
+    @TempDir
+    private Path tempDir;
+
+    private RunJournalLogic runJournalLogic;
+    private ClipPipelineLogic clipPipelineLogic;
+
+    @BeforeEach
+    void createPipeline() {
+        runJournalLogic = new RunJournalLogic(tempDir.toString());
+        clipPipelineLogic = new ClipPipelineLogic(twitchClipFetcherLogic, twitchClipDownloader, sqlSessionFactory,
+                videoLogic, runJournalLogic, twitchClipStore, twitchClipWatermarkLogic, new EncodeBudget(1, 1),
+                2, 4, 10, VideoModeEnum.SEGMENTED);
+    }
+
+    @Test
+    void journalsTheUploadBeforeCommittingIt() {
+        givenConcatenatedRun("a");
+        givenSession();
+        doThrow(new IllegalStateException("Database down")).when(twitchClipMapper).insertClip(any());
+
+        boolean committed = clipPipelineLogic.recordUploaded(STREAMER);
+
+        assertFalse(committed);
+        assertEquals(ClipJournalStageEnum.UPLOADED, runJournalLogic.load(STREAMER.getName()).orElseThrow().getStage());
+        verify(twitchClipWatermarkLogic, never()).advance(any(), any());
+    }
+
+    @Test
+    void commitsTheClipsAndWindowOfAnUploadedRun() {
+        givenConcatenatedRun("a", "b");
+        givenSession();
+        when(twitchClipMapper.selectClipsByClipIds(List.of("a", "b"))).thenReturn(List.of(clip("a")));
+
+        boolean committed = clipPipelineLogic.recordUploaded(STREAMER);
+
+        assertTrue(committed);
+        verify(twitchClipMapper, never()).insertClip(clip("a"));
+        verify(twitchClipMapper).insertClip(clip("b"));
+        verify(sqlSession).commit();
+        verify(twitchClipWatermarkLogic).advance("1", WINDOW);
+    }
+
+    @Test
+    void retriesTheCommitOfAnUploadedRunBeforeStartingANewOne() {
+        givenConcatenatedRun("a", "b");
+        runJournalLogic.recordUploaded(STREAMER.getName());
+        givenSession();
+        when(twitchClipMapper.selectClipsByClipIds(List.of("a", "b"))).thenReturn(List.of(clip("a")));
+        givenFetchedClips();
+
+        String mergedVideoPath = clipPipelineLogic.run(STREAMER, "output");
+
+        assertNull(mergedVideoPath);
+        verify(twitchClipMapper).insertClip(clip("b"));
+        verify(twitchClipWatermarkLogic).advance("1", WINDOW);
+        RunJournal newJournal = runJournalLogic.load(STREAMER.getName()).orElseThrow();
+        assertNull(newJournal.getStage());
+        assertTrue(newJournal.getClips().isEmpty());
+    }
+
+    @Test
+    void doesNotStartANewRunWhileAnUploadedOneIsNotCommitted() {
+        givenConcatenatedRun("a");
+        runJournalLogic.recordUploaded(STREAMER.getName());
+        givenSession();
+        when(twitchClipMapper.selectClipsByClipIds(anyList())).thenThrow(new IllegalStateException("Database down"));
+
+        String mergedVideoPath = clipPipelineLogic.run(STREAMER, "output");
+
+        assertNull(mergedVideoPath);
+        verifyNoInteractions(twitchClipFetcherLogic, twitchClipDownloader, videoLogic, twitchClipWatermarkLogic);
+        assertEquals(ClipJournalStageEnum.UPLOADED, runJournalLogic.load(STREAMER.getName()).orElseThrow().getStage());
+    }
+
+    @Test
+    void startsANewRunWhenNoJournaledClipCanBeResumed() {
+        RunJournal journal = runJournalLogic.loadOrStart(STREAMER.getName());
+        runJournalLogic.recordFetched(journal, new ClipFetchResult("1", WINDOW, List.of(clip("a"))),
+                List.of(new ClipWorkItem(0, clip("a"))));
+        givenSession();
+        when(twitchClipDownloader.resolveVideoUrls(List.of(clip("a")))).thenReturn(Map.of());
+        givenFetchedClips();
+
+        String mergedVideoPath = clipPipelineLogic.run(STREAMER, "output");
+
+        assertNull(mergedVideoPath);
+        verify(twitchClipFetcherLogic).getTwitchClips(eq(STREAMER.getName()), anyInt(), anyInt(), anyInt(), anyInt());
+        assertTrue(runJournalLogic.load(STREAMER.getName()).orElseThrow().getClips().isEmpty());
+    }
+
+    /**
+     * Journals a run of the given clips that was fetched and concatenated, but not uploaded yet.
+     */
+    private void givenConcatenatedRun(String... clipIds) {
+        RunJournal journal = runJournalLogic.loadOrStart(STREAMER.getName());
+        List<TwitchClip> clips = List.of(clipIds).stream().map(ClipPipelineLogicTest::clip).toList();
+        List<ClipWorkItem> items = clips.stream().map(clip -> new ClipWorkItem(clips.indexOf(clip), clip)).toList();
+        runJournalLogic.recordFetched(journal, new ClipFetchResult("1", WINDOW, clips), items);
+        runJournalLogic.recordConcatenated(journal, tempDir.resolve("merged.mp4").toString(), List.of(clipIds));
+    }
+
+    private void givenSession() {
+        when(sqlSessionFactory.openSession()).thenReturn(sqlSession);
+        when(sqlSession.getMapper(TwitchClipMapper.class)).thenReturn(twitchClipMapper);
+    }
+
+    private void givenFetchedClips() {
+        when(twitchClipFetcherLogic.getTwitchClips(eq(STREAMER.getName()), anyInt(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(new ClipFetchResult("1", WINDOW, List.of()));
+    }
+
+    private static TwitchClip clip(String clipId) {
+        return new TwitchClip(null, clipId, "title", "creator", 500,
+                LocalDateTime.parse("2025-01-09T12:00:00"), "1", "https://clips.twitch.tv/" + clipId, 30, "en");
+    }
+}
@@ -0,0 +1,94 @@
+package com.apa.clipfarmer.logic.pipeline;
+
+import com.apa.clipfarmer.model.ClipFetchResult;
+import com.apa.clipfarmer.model.ClipFetchWindow;
+import com.apa.clipfarmer.model.ClipJournalStageEnum;
+import com.apa.clipfarmer.model.TwitchClip;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunJournalLogicTest {
+
+    private static final String STREAMER = "streamer";
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void resumesTheFetchedClipsAndWindowOfAnInterruptedRun() {
+        ClipFetchWindow window = new ClipFetchWindow(Instant.parse("2025-01-09T00:00:00Z"),
+                Instant.parse("2025-01-10T00:00:00Z"), true);
+        RunJournal journal = journalLogic().loadOrStart(STREAMER);
+        ClipWorkItem item = new ClipWorkItem(0, clip("a"));
+        journalLogic().recordFetched(journal, new ClipFetchResult("1", window, List.of(item.getTwitchClip())), List.of(item));
+        item.setDownloadedPath("a.mp4");
+        journalLogic().recordClip(journal, item, ClipJournalStageEnum.DOWNLOADED);
+
+        RunJournal resumedJournal = journalLogic().loadOrStart(STREAMER);
+
+        assertEquals(journal.getStartedAt(), resumedJournal.getStartedAt());
+        assertEquals("1", resumedJournal.getBroadcasterId());
+        assertEquals(window, resumedJournal.getFetchWindow());
+        ClipWorkItem resumedItem = resumedJournal.getClips().get("a");
+        assertEquals(ClipJournalStageEnum.DOWNLOADED, resumedItem.getStage());
+        assertEquals("a.mp4", resumedItem.getDownloadedPath());
+        assertEquals(clip("a"), resumedItem.getTwitchClip());
+    }
+
+    @Test
+    void journalsTheUploadOfTheMergedVideo() {
+        RunJournal journal = journalLogic().loadOrStart(STREAMER);
+        journalLogic().recordConcatenated(journal, "merged.mp4", List.of("a", "b"));
+
+        RunJournal uploadedJournal = journalLogic().recordUploaded(STREAMER).orElseThrow();
+
+        assertEquals(List.of("a", "b"), uploadedJournal.getMergedClipIds());
+        assertEquals(ClipJournalStageEnum.UPLOADED, journalLogic().load(STREAMER).orElseThrow().getStage());
+    }
+
+    @Test
+    void startsANewRunAfterAnUploadedOne() {
+        RunJournal journal = journalLogic().loadOrStart(STREAMER);
+        journal.getClips().put("a", new ClipWorkItem(0, clip("a")));
+        journalLogic().recordConcatenated(journal, "merged.mp4", List.of("a"));
+        journalLogic().recordUploaded(STREAMER);
+
+        RunJournal newJournal = journalLogic().loadOrStart(STREAMER);
+
+        assertNull(newJournal.getStage());
+        assertTrue(newJournal.getClips().isEmpty());
+        assertNotEquals(ClipJournalStageEnum.UPLOADED, journalLogic().load(STREAMER).orElseThrow().getStage());
+    }
+
+    @Test
+    void deletesTheJournalOfACompleteRun() {
+        journalLogic().loadOrStart(STREAMER);
+        assertTrue(Files.isRegularFile(tempDir.resolve(STREAMER + ".json")));
+
+        journalLogic().delete(STREAMER);
+
+        assertFalse(Files.exists(tempDir.resolve(STREAMER + ".json")));
+        assertTrue(journalLogic().load(STREAMER).isEmpty());
+        assertTrue(journalLogic().recordUploaded(STREAMER).isEmpty());
+    }
+
+    private RunJournalLogic journalLogic() {
+        return new RunJournalLogic(tempDir.toString());
+    }
+
+    private static TwitchClip clip(String clipId) {
+        return new TwitchClip(null, clipId, "title", "creator", 500,
+                LocalDateTime.parse("2025-01-09T12:00:00"), "1", "https://clips.twitch.tv/" + clipId, 30, "en");
+    }
+}
@@ -0,0 +1,87 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AimdConcurrencyLimiterTest {
+
+    @Test
+    void blocksOnceTheLimitIsInFlightUntilARelease() throws InterruptedException {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(2, 1, 10);
+        limiter.acquire();
+        limiter.acquire();
+
+        Thread waiter = startAcquire(limiter);
+        waiter.join(200);
+        assertTrue(waiter.isAlive());
+
+        limiter.release(false);
+        waiter.join(1000);
+        assertFalse(waiter.isAlive());
+    }
+
+    @Test
+    void growsByOneRequestPerRoundOfSuccesses() throws InterruptedException {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(1, 1, 10);
+        limiter.acquire();
+        limiter.release(false);
+
+        assertTrue(acquiresWithoutWaiting(limiter, 2));
+    }
+
+    @Test
+    void halvesTheLimitWhenThrottled() throws InterruptedException {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(8, 1, 10);
+        limiter.acquire();
+        limiter.release(true);
+
+        assertTrue(acquiresWithoutWaiting(limiter, 4));
+    }
+
+    @Test
+    void staysWithinTheMinimumAndMaximum() throws InterruptedException {
+        AimdConcurrencyLimiter throttled = new AimdConcurrencyLimiter(2, 2, 10);
+        throttled.acquire();
+        throttled.release(true);
+        assertTrue(acquiresWithoutWaiting(throttled, 2));
+
+        AimdConcurrencyLimiter saturated = new AimdConcurrencyLimiter(20, 1, 3);
+        for (int i = 0; i < 10; i++) {
+            saturated.acquire();
+            saturated.release(false);
+        }
+        assertTrue(acquiresWithoutWaiting(saturated, 3));
+    }
+
+    /**
+     * Returns whether exactly the given number of requests can be in flight at the same time.
+     */
+    private static boolean acquiresWithoutWaiting(AimdConcurrencyLimiter limiter, int expected)
+            throws InterruptedException {
+        for (int i = 0; i < expected; i++) {
+            Thread waiter = startAcquire(limiter);
+            waiter.join(1000);
+            if (waiter.isAlive()) {
+                waiter.interrupt();
+                return false;
+            }
+        }
+        Thread waiter = startAcquire(limiter);
+        waiter.join(200);
+        boolean blocked = waiter.isAlive();
+        waiter.interrupt();
+        return blocked;
+    }
+
+    private static Thread startAcquire(AimdConcurrencyLimiter limiter) {
+        return Thread.ofVirtual().start(() -> {
+            try {
+                limiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+}
@@ -0,0 +1,195 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.logic.BandwidthScheduler;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClipFileDownloaderTest {
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    @TempDir
+    Path tempDir;
+
+    private final byte[] content = new byte[64 * 1024];
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private final AtomicInteger truncatedResponses = new AtomicInteger();
+    private volatile boolean ignoreRanges;
+    private volatile int rejectStatus;
+    private HttpServer server;
+    private CloseableHttpClient httpClient;
+    private Path outputPath;
+    private Path partPath;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        new Random(42).nextBytes(content);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/clip.mp4", this::serve);
+        server.start();
+        httpClient = HttpClients.createDefault();
+        outputPath = tempDir.resolve("clip.mp4");
+        partPath = tempDir.resolve("clip.mp4" + ClipFileDownloader.PART_SUFFIX);
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        httpClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    void resumesAPartialDownloadFromTheBytesOnDisk() throws IOException {
+        Files.write(partPath, Arrays.copyOf(content, 10_000));
+
+        assertTrue(downloader(1).download(url(), outputPath, "streamer"));
+
+        assertEquals(List.of("bytes=10000-"), ranges);
+        assertArrayEquals(content, Files.readAllBytes(outputPath));
+        assertFalse(Files.exists(partPath));
+    }
+
+    @Test
+    void keepsACompletePartFileWhenTheRangeIsNotSatisfiable() throws IOException {
+        Files.write(partPath, content);
+
+        assertTrue(downloader(1).download(url(), outputPath, "streamer"));
+
+        assertEquals(List.of("bytes=" + content.length + "-"), ranges);
+        assertArrayEquals(content, Files.readAllBytes(outputPath));
+    }
+
+    @Test
+    void restartsWhenThePartFileDoesNotMatchTheServerFile() throws IOException {
+        byte[] stale = Arrays.copyOf(content, content.length + 100);
+        Files.write(partPath, stale);
+
+        assertTrue(downloader(1).download(url(), outputPath, "streamer"));
+
+        assertEquals(List.of("bytes=" + stale.length + "-", "none"), ranges);
+        assertArrayEquals(content, Files.readAllBytes(outputPath));
+    }
+
+    @Test
+    void rewritesThePartFileWhenTheServerIgnoresTheRange() throws IOException {
+        Files.write(partPath, Arrays.copyOf(content, 10_000));
+        ignoreRanges = true;
+
+        assertTrue(downloader(1).download(url(), outputPath, "streamer"));
+
+        assertArrayEquals(content, Files.readAllBytes(outputPath));
+    }
+
+    @Test
+    void resumesAfterTheConnectionDrops() throws IOException {
+        truncatedResponses.set(1);
+
+        assertTrue(downloader(1).download(url(), outputPath, "streamer"));
+
+        assertEquals(2, ranges.size());
+        assertEquals("none", ranges.get(0));
+        assertTrue(ranges.get(1).startsWith("bytes="));
+        assertArrayEquals(content, Files.readAllBytes(outputPath));
+    }
+
+    @Test
+    void givesUpOnClientErrorsWithoutRetrying() {
+        rejectStatus = 403;
+
+        assertFalse(downloader(1).download(url(), outputPath, "streamer"));
+
+        assertEquals(1, ranges.size());
+        assertFalse(Files.exists(outputPath));
+        assertFalse(Files.exists(partPath));
+    }
+
+    @Test
+    void splitsALargeFileAfterTheFirstRangedRequest() throws IOException {
+        assertTrue(downloader(4).download(url(), outputPath, "streamer"));
+
+        assertEquals("bytes=0-4095", ranges.get(0));
+        assertEquals(4, ranges.size());
+        assertArrayEquals(content, Files.readAllBytes(outputPath));
+        assertFalse(Files.exists(tempDir.resolve("clip.mp4" + ClipFileDownloader.ALLOCATED_SUFFIX)));
+    }
+
+    @Test
+    void downloadsASmallFileWithTheFirstRangedRequest() throws IOException {
+        assertTrue(downloader(4, 128).download(url(), outputPath, "streamer"));
+
+        assertEquals(List.of("bytes=0-131071"), ranges);
+        assertArrayEquals(content, Files.readAllBytes(outputPath));
+    }
+
+    private ClipFileDownloader downloader(int maxSegments) {
+        return downloader(maxSegments, 4);
+    }
+
+    private ClipFileDownloader downloader(int maxSegments, int minSegmentKb) {
+        return new ClipFileDownloader(httpClient, new BandwidthScheduler(0), 3, 4, false, maxSegments, minSegmentKb, 1);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/clip.mp4";
+    }
+
+    /**
+     * Serves the content, honouring a single byte range unless ranges are ignored.
+     */
+    private void serve(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        ranges.add(range == null ? "none" : range);
+        if (rejectStatus > 0) {
+            exchange.sendResponseHeaders(rejectStatus, -1);
+            exchange.close();
+            return;
+        }
+
+        Matcher matcher = range == null || ignoreRanges ? null : RANGE_PATTERN.matcher(range);
+        if (matcher == null || !matcher.matches()) {
+            send(exchange, 200, 0, content.length);
+            return;
+        }
+        long start = Long.parseLong(matcher.group(1));
+        if (start >= content.length) {
+            exchange.getResponseHeaders().set("Content-Range", "bytes */" + content.length);
+            exchange.sendResponseHeaders(416, -1);
+            exchange.close();
+            return;
+        }
+        long end = matcher.group(2).isEmpty() ? content.length - 1 : Math.min(Long.parseLong(matcher.group(2)), content.length - 1);
+        exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+        send(exchange, 206, (int) start, (int) (end - start + 1));
+    }
+
+    private void send(HttpExchange exchange, int status, int offset, int length) throws IOException {
+        exchange.sendResponseHeaders(status, length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            boolean truncated = truncatedResponses.getAndUpdate(count -> Math.max(0, count - 1)) > 0;
+            body.write(content, offset, truncated ? length / 2 : length);
+        }
+    }
+}
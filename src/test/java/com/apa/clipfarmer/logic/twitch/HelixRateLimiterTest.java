@@ -0,0 +1,100 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HelixRateLimiterTest {
+
+    @Test
+    void grantsTheInitialBudgetWithoutWaiting() throws InterruptedException {
+        HelixRateLimiter limiter = new HelixRateLimiter(3);
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire();
+        }
+
+        Thread waiter = startAcquire(limiter);
+        waiter.join(200);
+        assertTrue(waiter.isAlive());
+        waiter.interrupt();
+    }
+
+    @Test
+    void waitsForTheBudgetReportedByTheServer() throws InterruptedException {
+        HelixRateLimiter limiter = new HelixRateLimiter(1);
+        limiter.acquire();
+        Thread waiter = startAcquire(limiter);
+        waiter.join(200);
+        assertTrue(waiter.isAlive());
+
+        limiter.update(headers("800", "5", Instant.now().plusSeconds(60)));
+
+        waiter.join(1000);
+        assertFalse(waiter.isAlive());
+    }
+
+    @Test
+    void refillsToTheReportedLimitOnceTheResetHasPassed() throws InterruptedException {
+        HelixRateLimiter limiter = new HelixRateLimiter(1);
+        limiter.update(headers("4", "0", Instant.now().minusSeconds(1)));
+
+        for (int i = 0; i < 4; i++) {
+            Thread waiter = startAcquire(limiter);
+            waiter.join(1000);
+            assertFalse(waiter.isAlive());
+        }
+        Thread waiter = startAcquire(limiter);
+        waiter.join(200);
+        assertTrue(waiter.isAlive());
+        waiter.interrupt();
+    }
+
+    @Test
+    void emptiesTheBucketWhenThrottled() throws InterruptedException {
+        HelixRateLimiter limiter = new HelixRateLimiter(10);
+        limiter.onThrottled(headers("10", "0", Instant.now().minusSeconds(1)));
+
+        long startTime = System.nanoTime();
+        limiter.acquire();
+
+        assertTrue(System.nanoTime() - startTime >= 500_000_000L);
+    }
+
+    @Test
+    void ignoresIncompleteOrInvalidHeaders() throws InterruptedException {
+        HelixRateLimiter limiter = new HelixRateLimiter(2);
+        limiter.update(headers("800", "0", null));
+        HttpHeaders invalid = headers("800", "none", Instant.now().plusSeconds(60));
+        limiter.update(invalid);
+
+        limiter.acquire();
+        limiter.acquire();
+        Thread waiter = startAcquire(limiter);
+        waiter.join(200);
+        assertTrue(waiter.isAlive());
+        waiter.interrupt();
+    }
+
+    private static Thread startAcquire(HelixRateLimiter limiter) {
+        return Thread.ofVirtual().start(() -> {
+            try {
+                limiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private static HttpHeaders headers(String limit, String remaining, Instant reset) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HelixRateLimiter.LIMIT_HEADER, limit);
+        headers.set(HelixRateLimiter.REMAINING_HEADER, remaining);
+        if (reset != null) {
+            headers.set(HelixRateLimiter.RESET_HEADER, String.valueOf(reset.getEpochSecond()));
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,51 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.model.TwitchClip;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopKClipSelectorTest {
+
+    @Test
+    void keepsMostViewedClipsSortedDescending() {
+        TopKClipSelector selector = new TopKClipSelector(3);
+        for (int viewCount : new int[]{500, 100, 900, 300, 700}) {
+            selector.offer(clip(viewCount));
+        }
+
+        List<Integer> viewCounts = selector.toSortedList().stream().map(TwitchClip::getViewCount).toList();
+        assertEquals(List.of(900, 700, 500), viewCounts);
+    }
+
+    @Test
+    void rejectsViewCountsThatCannotEnterOnceFull() {
+        TopKClipSelector selector = new TopKClipSelector(2);
+        assertTrue(selector.canAccept(1));
+
+        selector.offer(clip(800));
+        selector.offer(clip(600));
+
+        assertFalse(selector.canAccept(600));
+        assertTrue(selector.canAccept(601));
+        assertFalse(selector.offer(clip(400)));
+    }
+
+    @Test
+    void ignoresClipsAlreadySelected() {
+        TopKClipSelector selector = new TopKClipSelector(3);
+
+        assertTrue(selector.offer(clip(500)));
+        assertFalse(selector.offer(clip(500)));
+        assertEquals(1, selector.toSortedList().size());
+    }
+
+    private static TwitchClip clip(int viewCount) {
+        return new TwitchClip(null, "clip" + viewCount, "title", "creator", viewCount,
+                LocalDateTime.now(), "1", "https://clips.twitch.tv/clip" + viewCount, 30, "en");
+    }
+}
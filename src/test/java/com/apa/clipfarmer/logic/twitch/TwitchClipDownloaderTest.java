@@ -0,0 +1,130 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.model.TwitchClip;
+import com.apa.clipfarmer.utils.HttpUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import static com.apa.clipfarmer.model.TwitchConstants.TWITCH_GQL_URL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+@ExtendWith(MockitoExtension.class)
+class TwitchClipDownloaderTest {
+
+    @Mock
+    private TwitchAuthLogic twitchAuthLogic;
+
+    private RestTemplate restTemplate;
+    private MockRestServiceServer server;
+
+    @BeforeEach
+    void createServer() {
+        restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        when(twitchAuthLogic.getOAuthToken()).thenReturn("token");
+    }
+
+    @Test
+    void splitsTheClipsIntoBatchesOfTheConfiguredSize() {
+        expectBatch("a", "b");
+        expectBatch("c", "d");
+        expectBatch("e");
+
+        Map<String, String> videoUrls = downloader(2).resolveVideoUrls(
+                List.of(clip("a"), clip("b"), clip("c"), clip("d"), clip("e")));
+
+        server.verify();
+        assertEquals(5, videoUrls.size());
+        assertEquals("https://video/e-720.mp4?sig=sig-e&token=token-e", videoUrls.get("e"));
+    }
+
+    @Test
+    void keepsTheOtherBatchesWhenOneFails() {
+        expectBatch("a", "b");
+        server.expect(requestTo(TWITCH_GQL_URL)).andRespond(withServerError());
+
+        Map<String, String> videoUrls = downloader(2).resolveVideoUrls(List.of(clip("a"), clip("b"), clip("c")));
+
+        server.verify();
+        assertEquals(Map.of("a", "https://video/a-720.mp4?sig=sig-a&token=token-a",
+                "b", "https://video/b-720.mp4?sig=sig-b&token=token-b"), videoUrls);
+    }
+
+    @Test
+    void selectsTheSmallestRenditionReachingTheTargets() {
+        server.expect(requestTo(TWITCH_GQL_URL))
+                .andRespond(withSuccess("[" + response("a", "[" + quality("a", 1080, 60) + "," + quality("a", 720, 30)
+                        + "," + quality("a", 480, 30) + "]") + "]", MediaType.APPLICATION_JSON));
+
+        Map<String, String> videoUrls = downloader(10).resolveVideoUrls(List.of(clip("a")));
+
+        assertEquals("https://video/a-720.mp4?sig=sig-a&token=token-a", videoUrls.get("a"));
+    }
+
+    private TwitchClipDownloader downloader(int gqlBatchSize) {
+        return new TwitchClipDownloader(twitchAuthLogic, restTemplate, null, null, gqlBatchSize, 720, 30);
+    }
+
+    /**
+     * Expects a single GraphQL request carrying one operation per slug, in order, and answers all of them.
+     */
+    private void expectBatch(String... slugs) {
+        server.expect(requestTo(TWITCH_GQL_URL))
+                .andExpect(header("Authorization", "Bearer token"))
+                .andExpect(request -> {
+                    JsonNode operations = readBody((MockClientHttpRequest) request);
+                    assertEquals(slugs.length, operations.size());
+                    for (int i = 0; i < slugs.length; i++) {
+                        assertEquals(slugs[i], operations.get(i).path("variables").path("slug").asText());
+                    }
+                })
+                .andRespond(withSuccess(responses(slugs), MediaType.APPLICATION_JSON));
+    }
+
+    private static JsonNode readBody(MockClientHttpRequest request) throws IOException {
+        return HttpUtils.OBJECT_MAPPER.readTree(request.getBodyAsBytes());
+    }
+
+    private static String responses(String... slugs) {
+        StringBuilder responses = new StringBuilder("[");
+        for (String slug : slugs) {
+            responses.append(responses.length() > 1 ? "," : "").append(response(slug, "[" + quality(slug, 720, 30) + "]"));
+        }
+        return responses.append("]").toString();
+    }
+
+    private static String response(String slug, String videoQualities) {
+        return """
+                {"data": {"clip": {"videoQualities": %s,
+                "playbackAccessToken": {"signature": "sig-%s", "value": "token-%s"}}}}
+                """.formatted(videoQualities, slug, slug);
+    }
+
+    private static String quality(String slug, int height, int frameRate) {
+        return """
+                {"quality": "%d", "frameRate": %d, "sourceURL": "https://video/%s-%d.mp4"}
+                """.formatted(height, frameRate, slug, height);
+    }
+
+    private static TwitchClip clip(String slug) {
+        return new TwitchClip(null, slug, "title", "creator", 500,
+                LocalDateTime.now(), "1", "https://clips.twitch.tv/" + slug, 30, "en");
+    }
+}
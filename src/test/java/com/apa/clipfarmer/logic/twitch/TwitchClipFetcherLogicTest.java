@@ -0,0 +1,199 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.mapper.TwitchClipMapper;
+import com.apa.clipfarmer.model.ClipFetchWindow;
+import com.apa.clipfarmer.model.TwitchClip;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TwitchClipFetcherLogicTest {
+
+    private static final String BROADCASTER_ID = "1";
+    private static final Instant ENDED_AT = Instant.parse("2025-01-10T00:00:00Z");
+
+    @Mock
+    private TwitchUserLogic twitchUserLogic;
+
+    @Mock
+    private TwitchClipWatermarkLogic twitchClipWatermarkLogic;
+
+    @Mock
+    private TwitchAuthLogic twitchAuthLogic;
+
+    @Mock
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Mock
+    private SqlSession sqlSession;
+
+    @Mock
+    private TwitchClipMapper twitchClipMapper;
+
+    private final Map<String, String> pages = new HashMap<>();
+    private final List<URI> requests = new CopyOnWriteArrayList<>();
+    private final Map<String, TwitchClip> storedClips = new HashMap<>();
+    private TwitchClipFetcherLogic twitchClipFetcherLogic;
+
+    @BeforeEach
+    void createFetcher() {
+        RestTemplate restTemplate = new RestTemplate((uri, method) -> {
+            requests.add(uri);
+            MockClientHttpRequest request = new MockClientHttpRequest(method, uri);
+            request.setResponse(new MockClientHttpResponse(
+                    pages.getOrDefault(pageKey(uri), "{\"data\": [], \"pagination\": {}}").getBytes(StandardCharsets.UTF_8),
+                    HttpStatus.OK));
+            return request;
+        });
+        twitchClipFetcherLogic = new TwitchClipFetcherLogic(twitchUserLogic, twitchClipWatermarkLogic, twitchAuthLogic,
+                restTemplate, sqlSessionFactory, 4);
+
+        when(twitchUserLogic.getBroadcasterId("streamer")).thenReturn(BROADCASTER_ID);
+        when(twitchAuthLogic.getOAuthToken()).thenReturn("token");
+        when(sqlSessionFactory.openSession()).thenReturn(sqlSession);
+        when(sqlSession.getMapper(TwitchClipMapper.class)).thenReturn(twitchClipMapper);
+        when(twitchClipMapper.selectClipsByClipIds(anyList())).thenAnswer(invocation -> {
+            List<String> clipIds = invocation.getArgument(0);
+            return clipIds.stream().filter(storedClips::containsKey).map(storedClips::get).toList();
+        });
+    }
+
+    @Test
+    void dropsStoredClipsBeforeTheSelection() {
+        Instant startedAt = ENDED_AT.minus(Duration.ofHours(1));
+        givenWindow(startedAt);
+        storedClips.put("known1", clip("known1", 900));
+        storedClips.put("known2", clip("known2", 800));
+        givenPage(startedAt, ENDED_AT, null, "page2", clip("known1", 900), clip("known2", 800), clip("new1", 700));
+        givenPage(startedAt, ENDED_AT, "page2", null, clip("new2", 600), clip("new3", 500));
+
+        List<TwitchClip> twitchClips = fetch(2);
+
+        // The stored clips rank above the new ones, but neither fill the selection nor stop the paging
+        assertEquals(List.of("new1", "new2"), clipIds(twitchClips));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    void refreshesTheViewCountsOfStoredClipsFetchedAgainByTheOverlap() {
+        Instant startedAt = ENDED_AT.minus(Duration.ofHours(1));
+        givenWindow(startedAt);
+        storedClips.put("grown", clip("grown", 500));
+        storedClips.put("unchanged", clip("unchanged", 700));
+        givenPage(startedAt, ENDED_AT, null, null, clip("grown", 900), clip("unchanged", 700), clip("new1", 600));
+
+        List<TwitchClip> twitchClips = fetch(10);
+
+        assertEquals(List.of("new1"), clipIds(twitchClips));
+        verify(twitchClipMapper).updateViewCount("grown", 900);
+        verify(twitchClipMapper, never()).updateViewCount(eq("unchanged"), anyInt());
+        verify(sqlSession).commit();
+    }
+
+    @Test
+    void splitsAWindowWithMoreThanOnePageOfRelevantClipsInHalves() {
+        Instant startedAt = ENDED_AT.minus(Duration.ofHours(4));
+        Instant middle = ENDED_AT.minus(Duration.ofHours(2));
+        givenWindow(startedAt);
+        givenPage(startedAt, ENDED_AT, null, "page2", clip("a", 900), clip("b", 800));
+        givenPage(startedAt, middle, null, null, clip("a", 900), clip("c", 700));
+        givenPage(middle, ENDED_AT, null, null, clip("d", 600));
+
+        List<TwitchClip> twitchClips = fetch(10);
+
+        assertEquals(Set.of(startedAt + "/" + ENDED_AT, startedAt + "/" + middle, middle + "/" + ENDED_AT),
+                Set.copyOf(requestedWindows()));
+        assertEquals(3, requests.size());
+        assertEquals(List.of("a", "b", "c", "d"), clipIds(twitchClips));
+    }
+
+    @Test
+    void doesNotSplitAWindowWhosePageEndsBelowTheMinimumViews() {
+        Instant startedAt = ENDED_AT.minus(Duration.ofHours(4));
+        givenWindow(startedAt);
+        givenPage(startedAt, ENDED_AT, null, "page2", clip("a", 900), clip("b", 300));
+
+        List<TwitchClip> twitchClips = fetch(10);
+
+        assertEquals(List.of(startedAt + "/" + ENDED_AT), requestedWindows());
+        assertEquals(List.of("a"), clipIds(twitchClips));
+    }
+
+    private List<TwitchClip> fetch(int maxClips) {
+        return twitchClipFetcherLogic.getTwitchClips("streamer", 10, 400, 5, maxClips).getTwitchClips();
+    }
+
+    private void givenWindow(Instant startedAt) {
+        when(twitchClipWatermarkLogic.getFetchWindow(BROADCASTER_ID, 5))
+                .thenReturn(new ClipFetchWindow(startedAt, ENDED_AT, false));
+    }
+
+    /**
+     * Serves a page of clips, in descending view count, for a window and cursor of the Helix clips endpoint.
+     */
+    private void givenPage(Instant startedAt, Instant endedAt, String afterCursor, String nextCursor, TwitchClip... clips) {
+        List<String> data = new ArrayList<>();
+        for (TwitchClip clip : clips) {
+            data.add("""
+                    {"id": "%s", "title": "title", "creator_name": "Creator", "view_count": %d,
+                    "created_at": "2025-01-09T12:00:00Z", "broadcaster_id": "1", "url": "https://clips.twitch.tv/%s",
+                    "duration": 30, "language": "en"}
+                    """.formatted(clip.getClipId(), clip.getViewCount(), clip.getClipId()));
+        }
+        String pagination = nextCursor == null ? "{}" : "{\"cursor\": \"" + nextCursor + "\"}";
+        pages.put(startedAt + "/" + endedAt + "/" + afterCursor,
+                "{\"data\": [" + String.join(",", data) + "], \"pagination\": " + pagination + "}");
+    }
+
+    private List<String> requestedWindows() {
+        return requests.stream().map(uri -> {
+            Map<String, List<String>> params = UriComponentsBuilder.fromUri(uri).build().getQueryParams();
+            return params.get("started_at").get(0) + "/" + params.get("ended_at").get(0);
+        }).toList();
+    }
+
+    private static String pageKey(URI uri) {
+        Map<String, List<String>> params = UriComponentsBuilder.fromUri(uri).build().getQueryParams();
+        String afterCursor = params.containsKey("after") ? params.get("after").get(0) : null;
+        return params.get("started_at").get(0) + "/" + params.get("ended_at").get(0) + "/" + afterCursor;
+    }
+
+    private static List<String> clipIds(List<TwitchClip> twitchClips) {
+        return twitchClips.stream().map(TwitchClip::getClipId).toList();
+    }
+
+    private static TwitchClip clip(String clipId, int viewCount) {
+        TwitchClip clip = new TwitchClip();
+        clip.setClipId(clipId);
+        clip.setViewCount(viewCount);
+        return clip;
+    }
+}
@@ -0,0 +1,115 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TwitchClipStoreTest {
+
+    private static final int CLIP_SIZE = 400 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keepsPinnedClipsOverTheBudgetUntilReleased() throws Exception {
+        TwitchClipStore store = store();
+        addClip(store, "streamer", "a");
+        addClip(store, "streamer", "b");
+        addClip(store, "streamer", "c");
+
+        assertTrue(isStored(store, "a"));
+        assertTrue(isStored(store, "b"));
+        assertTrue(isStored(store, "c"));
+
+        store.release("streamer");
+
+        assertFalse(isStored(store, "a"));
+        assertTrue(isStored(store, "b"));
+        assertTrue(isStored(store, "c"));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedClipFirst() throws Exception {
+        TwitchClipStore store = store();
+        addClip(store, "first", "a");
+        addClip(store, "first", "b");
+        store.release("first");
+
+        assertTrue(store.pin("second", "a").isPresent());
+        Thread.sleep(5);
+        store.release("second");
+        addClip(store, "third", "c");
+
+        assertTrue(isStored(store, "a"));
+        assertFalse(isStored(store, "b"));
+        assertTrue(isStored(store, "c"));
+    }
+
+    @Test
+    void neverEvictsAClipPinnedByAnotherOwner() throws Exception {
+        TwitchClipStore store = store();
+        addClip(store, "first", "a");
+        assertTrue(store.pin("second", "a").isPresent());
+        Thread.sleep(5);
+        addClip(store, "first", "b");
+        store.release("first");
+
+        addClip(store, "third", "c");
+
+        assertTrue(isStored(store, "a"));
+        assertFalse(isStored(store, "b"));
+        assertTrue(isStored(store, "c"));
+    }
+
+    @Test
+    void restoresTheIndexAndAdoptsUnlistedFilesOnRestart() throws Exception {
+        TwitchClipStore store = store();
+        addClip(store, "streamer", "a");
+        addClip(store, "streamer", "b");
+        store.release("streamer");
+        Files.delete(store.getPath("b"));
+        Files.write(store.getPath("c"), new byte[CLIP_SIZE]);
+
+        TwitchClipStore restarted = store();
+
+        assertEquals(store.getPath("a"), restarted.pin("streamer", "a").orElseThrow());
+        assertFalse(restarted.pin("streamer", "b").isPresent());
+        assertTrue(restarted.pin("streamer", "c").isPresent());
+    }
+
+    @Test
+    void removesUnplayableClips() throws Exception {
+        TwitchClipStore store = store();
+        addClip(store, "streamer", "a");
+
+        store.remove("a");
+
+        assertFalse(Files.exists(store.getPath("a")));
+        assertFalse(store.pin("streamer", "a").isPresent());
+    }
+
+    /**
+     * Creates a store with a budget of 1 MB, which holds two clips but not three.
+     */
+    private TwitchClipStore store() {
+        return new TwitchClipStore(tempDir.toString(), 1);
+    }
+
+    private static void addClip(TwitchClipStore store, String owner, String clipId)
+            throws IOException, InterruptedException {
+        Files.write(store.getPath(clipId), new byte[CLIP_SIZE]);
+        store.add(owner, clipId);
+        Thread.sleep(5);
+    }
+
+    private static boolean isStored(TwitchClipStore store, String clipId) {
+        return Files.isRegularFile(store.getPath(clipId));
+    }
+}
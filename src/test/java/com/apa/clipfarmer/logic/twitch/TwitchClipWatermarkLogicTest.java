@@ -0,0 +1,138 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.mapper.TwitchClipWatermarkMapper;
+import com.apa.clipfarmer.model.ClipFetchWindow;
+import com.apa.clipfarmer.model.TwitchClipWatermark;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TwitchClipWatermarkLogicTest {
+
+    private static final String BROADCASTER_ID = "1";
+    private static final int DAYS_AGO = 5;
+
+    @Mock
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Mock
+    private SqlSession sqlSession;
+
+    @Mock
+    private TwitchClipWatermarkMapper twitchClipWatermarkMapper;
+
+    @BeforeEach
+    void openSession() {
+        when(sqlSessionFactory.openSession()).thenReturn(sqlSession);
+        when(sqlSession.getMapper(TwitchClipWatermarkMapper.class)).thenReturn(twitchClipWatermarkMapper);
+    }
+
+    @Test
+    void scansTheWholeLookBackPeriodWithoutAWatermark() {
+        ClipFetchWindow window = watermarkLogic(24, 72).getFetchWindow(BROADCASTER_ID, DAYS_AGO);
+
+        assertTrue(window.isFullScan());
+        assertEquals(window.getEndedAt().minus(DAYS_AGO, ChronoUnit.DAYS), window.getStartedAt());
+    }
+
+    @Test
+    void startsAnIncrementalWindowTheOverlapBeforeTheWatermark() {
+        Instant fetchedUntil = hoursAgo(2);
+        givenWatermark(fetchedUntil, hoursAgo(10));
+
+        ClipFetchWindow window = watermarkLogic(24, 72).getFetchWindow(BROADCASTER_ID, DAYS_AGO);
+
+        assertFalse(window.isFullScan());
+        assertEquals(fetchedUntil.minus(Duration.ofHours(24)), window.getStartedAt());
+        assertTrue(window.getEndedAt().isAfter(fetchedUntil));
+    }
+
+    @Test
+    void scansTheWholeLookBackPeriodAgainOnceTheLastFullScanIsTooOld() {
+        givenWatermark(hoursAgo(2), hoursAgo(73));
+
+        ClipFetchWindow window = watermarkLogic(24, 72).getFetchWindow(BROADCASTER_ID, DAYS_AGO);
+
+        assertTrue(window.isFullScan());
+        assertEquals(window.getEndedAt().minus(DAYS_AGO, ChronoUnit.DAYS), window.getStartedAt());
+    }
+
+    @Test
+    void clampsTheOverlapToTheLookBackPeriod() {
+        givenWatermark(hoursAgo(DAYS_AGO * 24 - 1), hoursAgo(DAYS_AGO * 24 - 1));
+
+        ClipFetchWindow window = watermarkLogic(24, 1000).getFetchWindow(BROADCASTER_ID, DAYS_AGO);
+
+        assertFalse(window.isFullScan());
+        assertEquals(window.getEndedAt().minus(DAYS_AGO, ChronoUnit.DAYS), window.getStartedAt());
+    }
+
+    @Test
+    void insertsTheFirstWatermarkOfABroadcasterWithItsFullScan() {
+        Instant endedAt = Instant.parse("2025-01-10T12:00:00.750Z");
+
+        watermarkLogic(24, 72).advance(BROADCASTER_ID, new ClipFetchWindow(endedAt.minus(Duration.ofDays(5)), endedAt, true));
+
+        ArgumentCaptor<TwitchClipWatermark> watermark = ArgumentCaptor.forClass(TwitchClipWatermark.class);
+        verify(twitchClipWatermarkMapper).insertWatermark(watermark.capture());
+        verify(twitchClipWatermarkMapper, never()).updateWatermark(any());
+        verify(sqlSession).commit();
+        assertEquals(BROADCASTER_ID, watermark.getValue().getBroadcasterId());
+        assertEquals(LocalDateTime.parse("2025-01-10T12:00:00"), watermark.getValue().getFetchedUntil());
+        assertEquals(LocalDateTime.parse("2025-01-10T12:00:00"), watermark.getValue().getLastFullScanAt());
+    }
+
+    @Test
+    void updatesTheWatermarkAndKeepsTheLastFullScanOfAnIncrementalWindow() {
+        LocalDateTime lastFullScanAt = LocalDateTime.parse("2025-01-09T00:00:00");
+        TwitchClipWatermark storedWatermark = new TwitchClipWatermark();
+        storedWatermark.setBroadcasterId(BROADCASTER_ID);
+        storedWatermark.setFetchedUntil(LocalDateTime.parse("2025-01-10T00:00:00"));
+        storedWatermark.setLastFullScanAt(lastFullScanAt);
+        when(twitchClipWatermarkMapper.selectByBroadcasterId(BROADCASTER_ID)).thenReturn(storedWatermark);
+        Instant endedAt = Instant.parse("2025-01-10T12:00:00Z");
+
+        watermarkLogic(24, 72).advance(BROADCASTER_ID, new ClipFetchWindow(endedAt.minus(Duration.ofDays(1)), endedAt, false));
+
+        ArgumentCaptor<TwitchClipWatermark> watermark = ArgumentCaptor.forClass(TwitchClipWatermark.class);
+        verify(twitchClipWatermarkMapper).updateWatermark(watermark.capture());
+        verify(twitchClipWatermarkMapper, never()).insertWatermark(any());
+        assertEquals(LocalDateTime.parse("2025-01-10T12:00:00"), watermark.getValue().getFetchedUntil());
+        assertEquals(lastFullScanAt, watermark.getValue().getLastFullScanAt());
+    }
+
+    private TwitchClipWatermarkLogic watermarkLogic(long overlapHours, long fullRescanHours) {
+        return new TwitchClipWatermarkLogic(sqlSessionFactory, overlapHours, fullRescanHours);
+    }
+
+    private void givenWatermark(Instant fetchedUntil, Instant lastFullScanAt) {
+        TwitchClipWatermark watermark = new TwitchClipWatermark();
+        watermark.setBroadcasterId(BROADCASTER_ID);
+        watermark.setFetchedUntil(LocalDateTime.ofInstant(fetchedUntil, ZoneOffset.UTC));
+        watermark.setLastFullScanAt(LocalDateTime.ofInstant(lastFullScanAt, ZoneOffset.UTC));
+        when(twitchClipWatermarkMapper.selectByBroadcasterId(BROADCASTER_ID)).thenReturn(watermark);
+    }
+
+    private static Instant hoursAgo(long hours) {
+        return Instant.now().truncatedTo(ChronoUnit.SECONDS).minus(Duration.ofHours(hours));
+    }
+}
@@ -0,0 +1,88 @@
+package com.apa.clipfarmer.logic.twitch;
+
+import com.apa.clipfarmer.model.TwitchConstants;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TwitchRateLimitInterceptorTest {
+
+    private static final MockClientHttpRequest GQL_REQUEST =
+            new MockClientHttpRequest(HttpMethod.POST, URI.create(TwitchConstants.TWITCH_GQL_URL));
+
+    @Test
+    void retriesAThrottledGraphQlRequest() throws IOException {
+        TwitchRateLimitInterceptor interceptor = new TwitchRateLimitInterceptor(800, 1, 4, 3);
+        AtomicInteger attempts = new AtomicInteger();
+
+        HttpStatus status = (HttpStatus) interceptor.intercept(GQL_REQUEST, new byte[0], (request, body) ->
+                new MockClientHttpResponse(new byte[0],
+                        attempts.incrementAndGet() == 1 ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.OK)).getStatusCode();
+
+        assertEquals(HttpStatus.OK, status);
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void doesNotRaiseTheGraphQlLimitOnFailedRequests() throws InterruptedException {
+        TwitchRateLimitInterceptor interceptor = new TwitchRateLimitInterceptor(800, 1, 4, 3);
+        for (int i = 0; i < 5; i++) {
+            assertThrows(IOException.class, () -> interceptor.intercept(GQL_REQUEST, new byte[0], (request, body) -> {
+                throw new IOException("Connection reset");
+            }));
+        }
+
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch firstReleased = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        Thread first = startIntercept(interceptor, (request, body) -> {
+            started.incrementAndGet();
+            firstStarted.countDown();
+            awaitUninterruptibly(firstReleased);
+            return new MockClientHttpResponse(new byte[0], HttpStatus.OK);
+        });
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        Thread second = startIntercept(interceptor, (request, body) -> {
+            started.incrementAndGet();
+            return new MockClientHttpResponse(new byte[0], HttpStatus.OK);
+        });
+
+        // The failures kept the limit at a single request, so the second one waits for the first
+        second.join(200);
+        assertEquals(1, started.get());
+        firstReleased.countDown();
+        first.join(5000);
+        second.join(5000);
+        assertEquals(2, started.get());
+    }
+
+    private static Thread startIntercept(TwitchRateLimitInterceptor interceptor, ClientHttpRequestExecution execution) {
+        return Thread.ofVirtual().start(() -> {
+            try {
+                interceptor.intercept(GQL_REQUEST, new byte[0], execution);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
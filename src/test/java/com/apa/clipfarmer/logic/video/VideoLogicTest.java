@@ -0,0 +1,80 @@
+package com.apa.clipfarmer.logic.video;
+
+import com.apa.clipfarmer.model.Mp4Metadata;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VideoLogicTest {
+
+    private final VideoLogic videoLogic = new VideoLogic(new EncodeBudget(2, 3), 720, 30);
+
+    @Test
+    void capsTheDecoderFiltersAndEncoderOfATransitionToTheBudget() {
+        List<String> command = videoLogic.createTransitionCommand("in.mp4", 10, "out.mp4");
+
+        int input = command.indexOf("-i");
+        assertEquals(List.of("-threads", "3"), command.subList(input - 2, input));
+        assertEquals("3", command.get(command.indexOf("-filter_threads") + 1));
+        assertTrue(command.indexOf("-filter_threads") < input);
+        int output = command.indexOf("out.mp4");
+        assertEquals(List.of("-threads", "3", "-y"), command.subList(output - 3, output));
+    }
+
+    @Test
+    void capsTheDecodersFilterGraphAndEncoderOfACompilationToTheBudget() {
+        List<String> command = videoLogic.createCompileCommand(List.of("a.mp4", "b.mp4"), List.of(10.0, 12.0),
+                Arrays.asList(null, null), "out.mp4");
+
+        assertEquals(List.of("ffmpeg", "-filter_complex_threads", "3", "-threads", "3", "-i", "a.mp4",
+                "-threads", "3", "-i", "b.mp4"), command.subList(0, 11));
+        int output = command.indexOf("out.mp4");
+        assertEquals(List.of("-threads", "3", "-y"), command.subList(output - 3, output));
+    }
+
+    @Test
+    void startsEveryCrossfadeTheTransitionBeforeTheEndOfTheClipsSoFar() {
+        String filterGraph = videoLogic.createFilterGraph(List.of("a.mp4", "b.mp4", "c.mp4"), List.of(10.0, 12.0, 8.0),
+                Arrays.asList(null, null, null));
+
+        assertTrue(filterGraph.contains("[v0][v1]xfade=transition=fade:duration=0.150000:offset=9.850000[vx1]"));
+        assertTrue(filterGraph.contains("[vx1][v2]xfade=transition=fade:duration=0.150000:offset=21.700000[vout]"));
+        assertTrue(filterGraph.contains("[a0][a1]acrossfade=d=0.150000[ax1]"));
+        assertTrue(filterGraph.contains("[ax1][a2]acrossfade=d=0.150000[aout]"));
+        assertTrue(filterGraph.contains("scale=1280:720:"));
+    }
+
+    @Test
+    void shortensTheTransitionToHalfTheShortestClip() {
+        String filterGraph = videoLogic.createFilterGraph(List.of("a.mp4", "b.mp4"), List.of(10.0, 0.2),
+                Arrays.asList(null, null));
+
+        assertTrue(filterGraph.contains("xfade=transition=fade:duration=0.100000:offset=9.900000[vout]"));
+    }
+
+    @Test
+    void givesASilentTrackToClipsWithoutAudio() {
+        Mp4Metadata withAudio = new Mp4Metadata();
+        withAudio.setAudioCodec("mp4a");
+        Mp4Metadata withoutAudio = new Mp4Metadata();
+
+        String filterGraph = videoLogic.createFilterGraph(List.of("a.mp4", "b.mp4"), List.of(10.0, 12.0),
+                List.of(withAudio, withoutAudio));
+
+        assertTrue(filterGraph.contains("[0:a]aformat=sample_rates=48000:channel_layouts=stereo"));
+        assertTrue(filterGraph.contains("anullsrc=r=48000:cl=stereo,atrim=duration=12.000000[a1]"));
+        assertFalse(filterGraph.contains("[1:a]"));
+    }
+
+    @Test
+    void passesASingleClipThrough() {
+        String filterGraph = videoLogic.createFilterGraph(List.of("a.mp4"), List.of(10.0), Arrays.asList((Mp4Metadata) null));
+
+        assertTrue(filterGraph.endsWith("[v0]null[vout];[a0]anull[aout]"));
+        assertFalse(filterGraph.contains("xfade"));
+    }
+}
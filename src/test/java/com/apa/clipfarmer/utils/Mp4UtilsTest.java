@@ -0,0 +1,101 @@
+package com.apa.clipfarmer.utils;
+
+import com.apa.clipfarmer.model.Mp4Metadata;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Mp4UtilsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readsDurationCodecsResolutionAndFrameRate() throws IOException {
+        Path path = Files.write(tempDir.resolve("clip.mp4"), mp4());
+
+        Mp4Metadata metadata = Mp4Utils.probe(path).orElseThrow();
+
+        assertEquals(10.5, metadata.getDurationSeconds(), 0.0001);
+        assertEquals("avc1", metadata.getVideoCodec());
+        assertEquals("mp4a", metadata.getAudioCodec());
+        assertEquals(1280, metadata.getWidth());
+        assertEquals(720, metadata.getHeight());
+        assertEquals(30.0, metadata.getFrameRate(), 0.0001);
+        assertFalse(metadata.isTruncated());
+    }
+
+    @Test
+    void flagsTruncatedFiles() throws IOException {
+        byte[] mp4 = mp4();
+        Path path = Files.write(tempDir.resolve("clip.mp4"), Arrays.copyOf(mp4, mp4.length - 10));
+
+        assertTrue(Mp4Utils.probe(path).orElseThrow().isTruncated());
+    }
+
+    @Test
+    void rejectsFilesWithoutMoovBox() throws IOException {
+        Path path = Files.write(tempDir.resolve("clip.mp4"), box("mdat", new byte[32]));
+
+        assertTrue(Mp4Utils.probe(path).isEmpty());
+    }
+
+    private static byte[] mp4() {
+        byte[] mvhd = fullBox("mvhd", ints(0, 0, 1000, 10500), new byte[80]);
+        byte[] videoTrack = box("trak",
+                fullBox("tkhd", ints(0, 0, 1, 0, 0), new byte[52], ints(1280 << 16, 720 << 16)),
+                box("mdia",
+                        fullBox("mdhd", ints(0, 0, 15360, 161280), new byte[4]),
+                        fullBox("hdlr", ints(0), "vide".getBytes(StandardCharsets.US_ASCII), new byte[12]),
+                        box("minf", box("stbl",
+                                fullBox("stsd", ints(1), box("avc1", new byte[8])),
+                                fullBox("stts", ints(1, 315, 512))))));
+        byte[] audioTrack = box("trak",
+                fullBox("tkhd", ints(0, 0, 2, 0, 0), new byte[52], ints(0, 0)),
+                box("mdia",
+                        fullBox("mdhd", ints(0, 0, 48000, 504000), new byte[4]),
+                        fullBox("hdlr", ints(0), "soun".getBytes(StandardCharsets.US_ASCII), new byte[12]),
+                        box("minf", box("stbl",
+                                fullBox("stsd", ints(1), box("mp4a", new byte[8])),
+                                fullBox("stts", ints(1, 492, 1024))))));
+        return concat(
+                box("ftyp", "isom".getBytes(StandardCharsets.US_ASCII), new byte[4]),
+                box("moov", mvhd, videoTrack, audioTrack),
+                box("mdat", new byte[64]));
+    }
+
+    private static byte[] box(String type, byte[]... contents) {
+        byte[] content = concat(contents);
+        return ByteBuffer.allocate(8 + content.length)
+                .putInt(8 + content.length)
+                .put(type.getBytes(StandardCharsets.US_ASCII))
+                .put(content)
+                .array();
+    }
+
+    private static byte[] fullBox(String type, byte[]... contents) {
+        return box(type, concat(new byte[4], concat(contents)));
+    }
+
+    private static byte[] ints(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        Arrays.stream(values).forEach(buffer::putInt);
+        return buffer.array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Arrays.stream(parts).forEach(output::writeBytes);
+        return output.toByteArray();
+    }
+}